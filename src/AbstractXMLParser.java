@@ -10,8 +10,31 @@ abstract class AbstractXMLParser implements XMLParser{
 
   @Override
   public XMLParser input(char c) throws InvalidXMLException {
+    long copyStart = XMLParserMetrics.startTimer();
     XMLElement rootElementCopy = new XMLElement(rootElement);
+    long processStart = XMLParserMetrics.recordInputCopy(copyStart);
     rootElementCopy.processChar(c);
+    XMLParserMetrics.recordProcessing(processStart);
+    return createXMLParser(rootElementCopy);
+  }
+
+  /**
+   * Accept several characters as input, and return the new parser as a result of handling all
+   * of them. This gives the same parser as calling {@link #input(char)} once per character, but
+   * the root element is only copied once.
+   *
+   * @param chars the input characters
+   * @return the parser after handling the provided characters
+   * @throws InvalidXMLException if the input causes the XML to be invalid
+   */
+  public XMLParser input(CharSequence chars) throws InvalidXMLException {
+    long copyStart = XMLParserMetrics.startTimer();
+    XMLElement rootElementCopy = new XMLElement(rootElement);
+    long processStart = XMLParserMetrics.recordInputCopy(copyStart);
+    for (int i = 0, n = chars.length(); i < n; i++) {
+      rootElementCopy.processChar(chars.charAt(i));
+    }
+    XMLParserMetrics.recordProcessing(processStart);
     return createXMLParser(rootElementCopy);
   }
 
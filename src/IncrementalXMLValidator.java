@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+
+/**
+ * Validates a document that is edited a little at a time, without feeding the whole document
+ * to a validator again after every edit.
+ *
+ * <p>The validator after every checkpointInterval characters is kept as a checkpoint. Validators
+ * never change once created, so a checkpoint is just a reference to one of them, and validators
+ * only keep the elements that are still open. Every validator has its own copy of the elements
+ * open at its offset though, so a checkpoint costs as many elements as the open depth. To keep
+ * the elements of all the checkpoints within the length of the document, the next checkpoint is
+ * never closer than the open depth: deep documents get fewer checkpoints, and an edit in them
+ * feeds again up to that depth in characters, about what copying the open elements costs
+ * anyway. After an edit, the text is fed again starting from
+ * the last checkpoint before the edit. Once past the edit, the new state is compared with the
+ * checkpoints of the previous validation: when they match, the rest of the document would be
+ * validated exactly as before, so the old checkpoints and status are reused and feeding stops.
+ */
+final class IncrementalXMLValidator {
+
+  private final int checkpointInterval;
+  private final StringBuilder document = new StringBuilder();
+  // Sorted by offset. The first one is always the empty validator at offset 0, and the last one
+  // the validator after the whole document, unless the document is invalid.
+  private ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+  private String status;
+  private String errorMessage;
+  private int lastRevalidatedLength;
+
+  /**
+   * Creates a validator of an empty document.
+   *
+   * @param checkpointInterval the number of characters between checkpoints
+   */
+  IncrementalXMLValidator(int checkpointInterval) {
+    if (checkpointInterval <= 0) {
+      throw new IllegalArgumentException("Checkpoint interval must be positive: "
+          + checkpointInterval);
+    }
+    this.checkpointInterval = checkpointInterval;
+    XMLValidator emptyValidator = new XMLValidator();
+    checkpoints.add(new Checkpoint(0, emptyValidator));
+    status = emptyValidator.output();
+  }
+
+  /**
+   * Replaces a range of the document with the given text and validates the result.
+   *
+   * @param offset the offset of the first replaced character
+   * @param removedLength the number of characters replaced
+   * @param inserted the text to insert at offset
+   * @throws IndexOutOfBoundsException if the range is not inside the document
+   */
+  void replace(int offset, int removedLength, CharSequence inserted) {
+    if (offset < 0 || removedLength < 0 || offset + removedLength > document.length()) {
+      throw new IndexOutOfBoundsException("Invalid range " + offset + "+" + removedLength
+          + " for document of length " + document.length());
+    }
+    document.replace(offset, offset + removedLength, inserted.toString());
+    revalidate(offset, offset + removedLength, inserted.length() - removedLength);
+  }
+
+  void insert(int offset, CharSequence inserted) {
+    replace(offset, 0, inserted);
+  }
+
+  void delete(int offset, int length) {
+    replace(offset, length, "");
+  }
+
+  int length() {
+    return document.length();
+  }
+
+  String getDocument() {
+    return document.toString();
+  }
+
+  /**
+   * Returns the status of the validation of the current document, as returned by XMLValidator.
+   *
+   * @throws InvalidXMLException if the current document is invalid
+   */
+  String output() throws InvalidXMLException {
+    if (errorMessage != null) {
+      throw new InvalidXMLException(errorMessage);
+    }
+    return status;
+  }
+
+  /**
+   * Returns the number of characters fed to validators by the last edit.
+   */
+  int getLastRevalidatedLength() {
+    return lastRevalidatedLength;
+  }
+
+  private void revalidate(int editOffset, int oldEditEnd, int delta) {
+    int restartIndex = getLastCheckpointIndex(editOffset);
+    ArrayList<Checkpoint> newCheckpoints = new ArrayList<>(checkpoints.subList(0, restartIndex + 1));
+
+    // The old checkpoints after the edited range, where the validation can converge
+    int oldIndex = restartIndex + 1;
+    while (oldIndex < checkpoints.size() && checkpoints.get(oldIndex).offset < oldEditEnd) {
+      oldIndex++;
+    }
+
+    Checkpoint restart = checkpoints.get(restartIndex);
+    AbstractXMLParser validator = restart.validator;
+    int position = restart.offset;
+    lastRevalidatedLength = 0;
+    try {
+      while (position < document.length()) {
+        while (oldIndex < checkpoints.size() && checkpoints.get(oldIndex).offset + delta <= position) {
+          oldIndex++;
+        }
+        int spacing = Math.max(checkpointInterval, validator.rootElement.getOpenDepth());
+        int next = Math.min(position + spacing, document.length());
+        if (oldIndex < checkpoints.size()) {
+          next = Math.min(next, checkpoints.get(oldIndex).offset + delta);
+        }
+        validator = (AbstractXMLParser) validator.input(document.subSequence(position, next));
+        lastRevalidatedLength += next - position;
+        position = next;
+
+        if (oldIndex < checkpoints.size() && checkpoints.get(oldIndex).offset + delta == position
+            && checkpoints.get(oldIndex).validator.rootElement
+                .hasSameValidationState(validator.rootElement)) {
+          // Converged: the rest validates as before, so status and errorMessage are kept
+          for (int i = oldIndex; i < checkpoints.size(); i++) {
+            Checkpoint oldCheckpoint = checkpoints.get(i);
+            newCheckpoints.add(new Checkpoint(oldCheckpoint.offset + delta, oldCheckpoint.validator));
+          }
+          checkpoints = newCheckpoints;
+          return;
+        }
+        newCheckpoints.add(new Checkpoint(position, validator));
+      }
+      status = validator.output();
+      errorMessage = null;
+    } catch (InvalidXMLException e) {
+      status = null;
+      errorMessage = e.getMessage();
+    }
+    checkpoints = newCheckpoints;
+  }
+
+  private int getLastCheckpointIndex(int offset) {
+    int low = 0;
+    int high = checkpoints.size() - 1;
+    while (low < high) {
+      int middle = (low + high + 1) >>> 1;
+      if (checkpoints.get(middle).offset <= offset) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return low;
+  }
+
+  private static final class Checkpoint {
+    private final int offset;
+    private final AbstractXMLParser validator;
+
+    Checkpoint(int offset, AbstractXMLParser validator) {
+      this.offset = offset;
+      this.validator = validator;
+    }
+  }
+}
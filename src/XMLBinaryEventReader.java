@@ -0,0 +1,139 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads an event log written by XMLBinaryEventWriter and replays its events.
+ */
+final class XMLBinaryEventReader {
+
+  private static final int READ_CHUNK_SIZE = 8192;
+
+  private final InputStream in;
+  private final ArrayList<String> tagNames = new ArrayList<>();
+
+  /**
+   * Creates a reader of the given stream and checks that it starts with a supported header.
+   *
+   * @param in the stream with the event log
+   * @throws IOException if the stream cannot be read or is not an event log
+   */
+  XMLBinaryEventReader(InputStream in) throws IOException {
+    this.in = new BufferedInputStream(in);
+    byte[] magic = new byte[XMLBinaryEventWriter.MAGIC.length];
+    readFully(magic);
+    if (!Arrays.equals(magic, XMLBinaryEventWriter.MAGIC)) {
+      throw new IOException("Not an XML event log");
+    }
+    int version = readByte();
+    if (version != XMLBinaryEventWriter.VERSION) {
+      throw new IOException("Unsupported event log version: " + version);
+    }
+  }
+
+  /**
+   * Sends every remaining event of the log to the given handler.
+   *
+   * @param handler the receiver of the events
+   * @throws IOException if the log cannot be read or the handler fails
+   */
+  void replay(XMLEventHandler handler) throws IOException {
+    while (readEvent(handler)) {
+      // Keep reading until the end of the log
+    }
+  }
+
+  /**
+   * Sends the next event of the log to the given handler.
+   *
+   * @param handler the receiver of the event
+   * @return false if the end of the log was reached, true otherwise
+   * @throws IOException if the log cannot be read or the handler fails
+   */
+  boolean readEvent(XMLEventHandler handler) throws IOException {
+    int opcode = in.read();
+    while (opcode == XMLBinaryEventWriter.DEFINE_TAG) {
+      tagNames.add(readString());
+      opcode = in.read();
+    }
+    switch (opcode) {
+      case -1:
+        return false;
+      case XMLBinaryEventWriter.START_TAG:
+        handler.startTag(readTagName());
+        return true;
+      case XMLBinaryEventWriter.END_TAG:
+        handler.endTag(readTagName());
+        return true;
+      case XMLBinaryEventWriter.CHARACTERS:
+        handler.characters(readString());
+        return true;
+      default:
+        throw new IOException("Invalid event opcode: " + opcode);
+    }
+  }
+
+  private String readTagName() throws IOException {
+    int tagId = readVarint();
+    if (tagId >= tagNames.size()) {
+      throw new IOException("Undefined tag id: " + tagId);
+    }
+    return tagNames.get(tagId);
+  }
+
+  private String readString() throws IOException {
+    int length = readVarint();
+    // Read in chunks, so that the length of a corrupt log cannot allocate more than the bytes
+    // that actually follow it
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(length, READ_CHUNK_SIZE));
+    byte[] chunk = new byte[Math.min(length, READ_CHUNK_SIZE)];
+    for (int remaining = length; remaining > 0; ) {
+      int read = in.read(chunk, 0, Math.min(remaining, chunk.length));
+      if (read == -1) {
+        throw new EOFException("Unexpected end of event log");
+      }
+      bytes.write(chunk, 0, read);
+      remaining -= read;
+    }
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+
+  private int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        if (value < 0) {
+          throw new IOException("Invalid varint");
+        }
+        return value;
+      }
+    }
+    throw new IOException("Invalid varint");
+  }
+
+  private int readByte() throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      throw new EOFException("Unexpected end of event log");
+    }
+    return b;
+  }
+
+  private void readFully(byte[] bytes) throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      int read = in.read(bytes, offset, bytes.length - offset);
+      if (read == -1) {
+        throw new EOFException("Unexpected end of event log");
+      }
+      offset += read;
+    }
+  }
+}
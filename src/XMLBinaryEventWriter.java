@@ -0,0 +1,86 @@
+import java.io.BufferedOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes events in a compact binary form that XMLBinaryEventReader can read back.
+ *
+ * <p>The log starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per event.
+ * Every record starts with an opcode byte. Tag names are written once, in a DEFINE_TAG record
+ * holding the name, and are afterwards referenced by their id, which is the number of names
+ * defined before them. Numbers are unsigned varints (7 bits per byte, lowest bits first) and
+ * text is written as a varint byte length followed by the UTF-8 bytes.
+ */
+final class XMLBinaryEventWriter implements XMLEventHandler, Flushable {
+
+  static final byte[] MAGIC = {'X', 'E', 'V', 'L'};
+  static final int VERSION = 1;
+
+  static final int DEFINE_TAG = 1;
+  static final int START_TAG = 2;
+  static final int END_TAG = 3;
+  static final int CHARACTERS = 4;
+
+  private final OutputStream out;
+  private final Map<String, Integer> tagIds = new HashMap<>();
+
+  XMLBinaryEventWriter(OutputStream out) throws IOException {
+    this.out = new BufferedOutputStream(out);
+    this.out.write(MAGIC);
+    this.out.write(VERSION);
+  }
+
+  @Override
+  public void startTag(String tagName) throws IOException {
+    int tagId = getTagId(tagName);
+    out.write(START_TAG);
+    writeVarint(tagId);
+  }
+
+  @Override
+  public void endTag(String tagName) throws IOException {
+    int tagId = getTagId(tagName);
+    out.write(END_TAG);
+    writeVarint(tagId);
+  }
+
+  @Override
+  public void characters(String characters) throws IOException {
+    out.write(CHARACTERS);
+    writeString(characters);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private int getTagId(String tagName) throws IOException {
+    Integer tagId = tagIds.get(tagName);
+    if (tagId == null) {
+      tagId = tagIds.size();
+      tagIds.put(tagName, tagId);
+      out.write(DEFINE_TAG);
+      writeString(tagName);
+    }
+    return tagId;
+  }
+
+  private void writeString(String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    writeVarint(bytes.length);
+    out.write(bytes);
+  }
+
+  private void writeVarint(int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+}
@@ -0,0 +1,198 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Accepts a stream of documents written one after the other, one character at a time, and
+ * parses every document with its own parser.
+ *
+ * <p>The end of a document is found by a scan that only follows its tags: it keeps the names of
+ * the open elements and checks every end tag against the innermost of them, without building
+ * anything per character. All the other checks are left to the parser of the document, which
+ * runs in the executor while the next document is read. Whitespace between documents is
+ * ignored. When the tags show that a document is invalid, it ends at the character that showed
+ * it, its parser reports the error, and the stream skips everything up to the next start tag,
+ * where the next document starts.
+ */
+final class XMLDocumentStream {
+
+  private static final int INITIAL_DEPTH_CAPACITY = 16;
+
+  private final Supplier<? extends AbstractXMLParser> parserFactory;
+  private final Executor executor;
+  private final Consumer<? super CompletableFuture<String>> documentListener;
+
+  private final StringBuilder document = new StringBuilder();
+  // The names of the open elements one after the other, and where each of them starts
+  private final StringBuilder openTagNames = new StringBuilder();
+  private int[] openTagNameStarts = new int[INITIAL_DEPTH_CAPACITY];
+  private int depth;
+  private boolean isInTag;
+  private boolean isEndTag;
+  // The number of characters of the name of the tag being read
+  private int tagNameLength;
+  // After an invalid document, until the next start tag
+  private boolean isSkippingToNextDocument;
+  private boolean isAfterTagStart;
+
+  /**
+   * Creates a stream that parses every document in the thread that inputs its last character.
+   */
+  XMLDocumentStream(Supplier<? extends AbstractXMLParser> parserFactory,
+      Consumer<? super CompletableFuture<String>> documentListener) {
+    this(parserFactory, Runnable::run, documentListener);
+  }
+
+  /**
+   * Creates a stream that parses every document in the given executor.
+   *
+   * @param parserFactory creates the parser of each document
+   * @param executor runs the parsing of the documents
+   * @param documentListener receives, in the order of the documents, the future output of the
+   *                         parser of each document. The future fails with InvalidXMLException
+   *                         if the document is invalid.
+   */
+  XMLDocumentStream(Supplier<? extends AbstractXMLParser> parserFactory, Executor executor,
+      Consumer<? super CompletableFuture<String>> documentListener) {
+    this.parserFactory = parserFactory;
+    this.executor = executor;
+    this.documentListener = documentListener;
+  }
+
+  void input(char c) {
+    if (isSkippingToNextDocument) {
+      skipToNextDocument(c);
+      return;
+    }
+    if (document.length() == 0 && Character.isWhitespace(c)) {
+      return;
+    }
+    document.append(c);
+    if (!scanChar(c)) {
+      emitInvalidDocument(c);
+    } else if (depth == 0 && !isInTag) {
+      emitDocument();
+    }
+  }
+
+  void input(CharSequence chars) {
+    for (int i = 0, n = chars.length(); i < n; i++) {
+      input(chars.charAt(i));
+    }
+  }
+
+  /**
+   * Ends the stream. If there are characters of a document that did not end, they are parsed
+   * as the last document.
+   */
+  void finish() {
+    if (isSkippingToNextDocument && isAfterTagStart) {
+      isSkippingToNextDocument = false;
+      input('<');
+    }
+    if (document.length() != 0) {
+      emitDocument();
+    }
+  }
+
+  private void skipToNextDocument(char c) {
+    if (XMLTag.isStartSpecialCharacter(c)) {
+      isAfterTagStart = true;
+    } else if (isAfterTagStart && c != '/') {
+      isSkippingToNextDocument = false;
+      input('<');
+      input(c);
+    } else {
+      isAfterTagStart = false;
+    }
+  }
+
+  /**
+   * Follows the tags of the document, returning false when they make it invalid.
+   */
+  private boolean scanChar(char c) {
+    if (!isInTag) {
+      if (XMLTag.isStartSpecialCharacter(c)) {
+        isInTag = true;
+        isEndTag = false;
+        tagNameLength = 0;
+        return true;
+      }
+      // Only the root element can have text
+      return depth != 0;
+    }
+    if (XMLTag.isStartSpecialCharacter(c)) {
+      return false;
+    }
+    if (c == '>') {
+      return finishTag();
+    }
+    if (c == '/' && tagNameLength == 0 && !isEndTag) {
+      isEndTag = true;
+      return true;
+    }
+    if (isEndTag) {
+      int nameIndex = depth == 0 ? -1 : openTagNameStarts[depth - 1] + tagNameLength;
+      if (nameIndex < 0 || nameIndex >= openTagNames.length()
+          || openTagNames.charAt(nameIndex) != c) {
+        return false;
+      }
+    } else {
+      openTagNames.append(c);
+    }
+    tagNameLength++;
+    return true;
+  }
+
+  private boolean finishTag() {
+    isInTag = false;
+    if (tagNameLength == 0) {
+      return false;
+    }
+    if (isEndTag) {
+      int nameStart = openTagNameStarts[depth - 1];
+      if (nameStart + tagNameLength != openTagNames.length()) {
+        return false;
+      }
+      openTagNames.setLength(nameStart);
+      depth--;
+    } else {
+      if (depth == openTagNameStarts.length) {
+        openTagNameStarts = Arrays.copyOf(openTagNameStarts, depth * 2);
+      }
+      openTagNameStarts[depth++] = openTagNames.length() - tagNameLength;
+    }
+    return true;
+  }
+
+  private void emitDocument() {
+    String documentText = document.toString();
+    document.setLength(0);
+    openTagNames.setLength(0);
+    depth = 0;
+    isInTag = false;
+    documentListener.accept(CompletableFuture.supplyAsync(() -> parse(documentText), executor));
+  }
+
+  /**
+   * Emits the document up to the character that made it invalid, for its parser to report the
+   * error, and skips to the next start tag.
+   */
+  private void emitInvalidDocument(char lastChar) {
+    emitDocument();
+    isSkippingToNextDocument = true;
+    // The character that made the document invalid can be the start of the next one
+    isAfterTagStart = XMLTag.isStartSpecialCharacter(lastChar);
+  }
+
+  private String parse(String documentText) {
+    try {
+      return parserFactory.get().input(documentText).output();
+    } catch (InvalidXMLException e) {
+      throw new CompletionException(e);
+    }
+  }
+}
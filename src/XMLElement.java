@@ -1,28 +1,107 @@
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 
 class XMLElement implements XMLElementComponent{
 
-  private ArrayList<XMLElementComponent> children;
+  // Completed components never change, so copies of an element share them: the children are
+  // the first childCount components of a log that copies append to, see addChild
+  private ChildLog childLog;
+  private int childCount;
+  // Number of components in this element, counting those inside its children
+  private int subtreeSize;
   private boolean isComplete;
   private boolean isStarted;
+  private int depth;
+
+  // Children whose start tag name is in this set are only checked for tag balance:
+  // their content is not stored, see processSkippedChar
+  private final Set<String> skippedTagNames;
+  private boolean isSkipping;
+  private OpenSkippedTag openSkippedTags;
+
+  // When false, only the start tag is kept in children: completed children, strings and the
+  // end tag are dropped once processed, since they are not needed to validate what follows
+  private final boolean keepsContent;
+
+  // Receives the events of this element as soon as they are known, in the same order as
+  // XMLInfoLogger logs them. A string is only known to be logged when the next tag completes,
+  // so it waits in stringBeforeTag until then.
+  private final XMLEventHandler eventHandler;
+  private XMLString stringBeforeTag;
 
   private XMLTag tagBeingProcessed;
   private XMLString stringBeingProcessed;
   private XMLElement childElementBeingProcessed;
 
+  // Only open elements have a parent. The element that characters are given to keeps track of
+  // its innermost open element, so a character is handled without going down every level
+  private XMLElement parent;
+  private XMLElement innermostElement;
+
 
   XMLElement() {
-    children = new ArrayList<>();
+    this(Collections.<String>emptySet());
+  }
+
+  XMLElement(Set<String> skippedTagNames) {
+    this(skippedTagNames, true);
+  }
+
+  XMLElement(Set<String> skippedTagNames, boolean keepsContent) {
+    this(skippedTagNames, keepsContent, null);
+  }
+
+  XMLElement(Set<String> skippedTagNames, boolean keepsContent, XMLEventHandler eventHandler) {
+    childLog = new ChildLog();
     isComplete = false;
     isStarted = false;
+    depth = 1;
+    this.skippedTagNames = skippedTagNames;
+    this.keepsContent = keepsContent;
+    this.eventHandler = eventHandler;
+    tagBeingProcessed = new XMLTag();
+    stringBeingProcessed = new XMLString();
+    innermostElement = this;
   }
 
+  /**
+   * Copies the given element and its open descendants, one level at a time so that deep
+   * documents do not need a deep stack. Completed children are shared with the copy.
+   */
   XMLElement(XMLElement xmlElement) {
+    this(xmlElement, null);
+    XMLElement source = xmlElement;
+    XMLElement copy = this;
+    while (source.childIsBeingProcessed()) {
+      copy.childElementBeingProcessed = new XMLElement(source.childElementBeingProcessed, copy);
+      source = source.childElementBeingProcessed;
+      copy = copy.childElementBeingProcessed;
+    }
+    if (source.childElementBeingProcessed != null && source.childElementBeingProcessed.isStarted()) {
+      copy.childElementBeingProcessed = source.childElementBeingProcessed;
+    }
+    innermostElement = copy;
+  }
 
-    this.children =  copyChildren(xmlElement.children);
+  private XMLElement(XMLElement xmlElement, XMLElement parent) {
+    this.childLog = xmlElement.childLog;
+    this.childCount = xmlElement.childCount;
+    this.subtreeSize = xmlElement.subtreeSize;
     this.isComplete = xmlElement.isComplete;
     this.isStarted = xmlElement.isStarted;
+    this.depth = xmlElement.depth;
+    this.skippedTagNames = xmlElement.skippedTagNames;
+    this.isSkipping = xmlElement.isSkipping;
+    this.openSkippedTags = xmlElement.openSkippedTags;
+    this.keepsContent = xmlElement.keepsContent;
+    this.eventHandler = xmlElement.eventHandler;
+    this.stringBeforeTag = xmlElement.stringBeforeTag;
+    this.parent = parent;
 
     if (xmlElement.tagBeingProcessed != null && (xmlElement.tagBeingProcessed.isStarted())) {
       this.tagBeingProcessed = new XMLTag(xmlElement.tagBeingProcessed);
@@ -35,30 +114,70 @@ class XMLElement implements XMLElementComponent{
     }  else {
       stringBeingProcessed = new XMLString();
     }
-
-    if(xmlElement.childElementBeingProcessed != null && (xmlElement.childElementBeingProcessed.isStarted())) {
-      this.childElementBeingProcessed = new XMLElement(xmlElement.childElementBeingProcessed);
-    }  else {
-      childElementBeingProcessed = new XMLElement();
-    }
+    XMLParserMetrics.recordComponentCopy();
   }
 
-  private ArrayList<XMLElementComponent> copyChildren(ArrayList<XMLElementComponent> childrenToCopy) {
-    ArrayList<XMLElementComponent> returnArray = new ArrayList<>();
-    for (XMLElementComponent xmlChildElement : childrenToCopy){
-      returnArray.add(xmlChildElement.createCopy());
-    }
-    return returnArray;
+  List<XMLElementComponent> getChildren() {
+    return Collections.unmodifiableList(Arrays.asList(childLog.components).subList(0, childCount));
   }
 
-  ArrayList<XMLElementComponent> getChildren() {
-    return children;
+  /**
+   * Returns the number of components of this element, including the components of its
+   * children, recursively.
+   */
+  int getSubtreeSize() {
+    return subtreeSize;
   }
 
   XMLElement getChildBeingProcessed() {
     return childElementBeingProcessed;
   }
 
+  /**
+   * Returns whether this element and the given one will accept or reject the same characters
+   * from now on, ending in the same status. Completed children and the text of strings are not
+   * compared, since they do not affect the validation of the rest of the input. The open
+   * descendants are compared one level at a time, so that deep documents do not need a deep
+   * stack.
+   */
+  boolean hasSameValidationState(XMLElement other) {
+    XMLElement element = this;
+    while (element.hasSameOwnValidationState(other)) {
+      if (!element.childIsBeingProcessed()) {
+        return true;
+      }
+      element = element.childElementBeingProcessed;
+      other = other.childElementBeingProcessed;
+    }
+    return false;
+  }
+
+  private boolean hasSameOwnValidationState(XMLElement other) {
+    if (isStarted != other.isStarted || isComplete != other.isComplete
+        || isSkipping != other.isSkipping
+        || !OpenSkippedTag.haveSameNames(openSkippedTags, other.openSkippedTags)
+        || (childCount == 0) != (other.childCount == 0)) {
+      return false;
+    }
+    if (childCount != 0 && !getStartTagName().equals(other.getStartTagName())) {
+      return false;
+    }
+    if (tagIsBeingProcessed() != other.tagIsBeingProcessed()
+        || stringIsBeingProcessed() != other.stringIsBeingProcessed()
+        || childIsBeingProcessed() != other.childIsBeingProcessed()) {
+      return false;
+    }
+    return !tagIsBeingProcessed() || tagBeingProcessed.hasSameState(other.tagBeingProcessed);
+  }
+
+  /**
+   * Returns the number of elements open in this element, including itself, which is the number
+   * of elements that a copy of it creates.
+   */
+  int getOpenDepth() {
+    return innermostElement.depth;
+  }
+
   @Override
   public boolean isStarted() {
     return isStarted;
@@ -70,18 +189,28 @@ class XMLElement implements XMLElementComponent{
   }
 
   @Override
-  public XMLElement createCopy() {
-    return new XMLElement(this);
+  public void processChar(char c) throws InvalidXMLException {
+    XMLElement element = innermostElement;
+    element.processOwnChar(c);
+    if (element.isComplete && element != this) {
+      XMLElement parentElement = element.parent;
+      element.parent = null;
+      parentElement.addContent(element);
+      element = parentElement;
+    } else if (element.childIsBeingProcessed()) {
+      element = element.childElementBeingProcessed;
+    }
+    innermostElement = element;
   }
 
-  @Override
-  public void processChar(char c) throws InvalidXMLException {
-    if (childIsBeingProcessed()) {
+  /**
+   * Processes a character of an element with no open child: an end tag completes at most this
+   * element, and a start tag opens at most one child.
+   */
+  private void processOwnChar(char c) throws InvalidXMLException {
+    if (isSkipping) {
 
-      childElementBeingProcessed.processChar(c);
-      if (childElementBeingProcessed.isCompleted()) {
-        children.add(childElementBeingProcessed);
-      }
+      processSkippedChar(c);
 
     } else if (tagIsBeingProcessed()){
 
@@ -102,6 +231,7 @@ class XMLElement implements XMLElementComponent{
 
     } else if (!isStarted()) {
       isStarted = true;
+      XMLParserMetrics.recordDepth(depth);
       startTag(c);
     } else if (!isCompleted()) {
       if (XMLTag.isStartSpecialCharacter(c)) {
@@ -115,7 +245,8 @@ class XMLElement implements XMLElementComponent{
   }
 
   private boolean childIsBeingProcessed() {
-    return childElementBeingProcessed.isStarted() && !childElementBeingProcessed.isCompleted();
+    return childElementBeingProcessed != null
+        && childElementBeingProcessed.isStarted() && !childElementBeingProcessed.isCompleted();
   }
 
   private boolean tagIsBeingProcessed() {
@@ -123,20 +254,21 @@ class XMLElement implements XMLElementComponent{
   }
 
   private void checkIfValidEndTag() throws InvalidXMLException {
-    if (children.isEmpty()) {
+    if (childCount == 0) {
       throw new InvalidXMLException("Element cannot start with end tag");
     }
-    XMLTag startTag = (XMLTag) children.get(0);
-    String startTagName = startTag.getTagName();
+    checkIfValidEndTag(getStartTagName());
+  }
+
+  private void checkIfValidEndTag(String startTagName) throws InvalidXMLException {
     String currentlyEndTagName = tagBeingProcessed.getTagName();
-    if (!currentlyEndTagName.equals("")
-        && (!currentlyEndTagName.equals(startTagName.substring(0, currentlyEndTagName.length()))
-        || currentlyEndTagName.length() > startTagName.length())){
+    if (!currentlyEndTagName.equals("") && !startTagName.startsWith(currentlyEndTagName)){
       throw new InvalidXMLException("Invalid end tag: " + currentlyEndTagName);
     }
   }
 
   private void finishProcessingTag() throws InvalidXMLException {
+    XMLParserMetrics.recordTag();
     if (tagBeingProcessed.isStartTag()) {
       finishProcessingStartTag();
     } else {
@@ -145,8 +277,9 @@ class XMLElement implements XMLElementComponent{
   }
 
   private void finishProcessingStartTag() throws InvalidXMLException {
-    if (children.isEmpty()) {
-      children.add(tagBeingProcessed);
+    if (childCount == 0) {
+      addChild(tagBeingProcessed);
+      fireStartTag(tagBeingProcessed);
     } else /*if (!tagBeingProcessed.getTagName().equals(getStartTagName()))*/ {
       childElementBeingProcessed = createChildAndAddTag(tagBeingProcessed);
     } /*else {
@@ -155,21 +288,67 @@ class XMLElement implements XMLElementComponent{
   }
 
   private String getStartTagName() {
-    return ((XMLTag)children.get(0)).getTagName();
+    return ((XMLTag)childLog.components[0]).getTagName();
   }
 
   private XMLElement createChildAndAddTag(XMLTag startTag) {
-    XMLElement childElement = new XMLElement();
-    childElement.children.add(startTag);
+    fireStringBeforeTag();
+    fireStartTag(startTag);
+    XMLElement childElement = new XMLElement(skippedTagNames, keepsContent, eventHandler);
+    childElement.addChild(startTag);
     childElement.isStarted = true;
+    childElement.parent = this;
+    childElement.depth = depth + 1;
+    XMLParserMetrics.recordDepth(childElement.depth);
+    childElement.isSkipping = skippedTagNames.contains(startTag.getTagName());
     return childElement;
   }
 
+  /**
+   * Processes a character of an element whose content is skipped. Only the names of the nested
+   * tags that are open are kept, to check that every end tag matches the innermost of them until
+   * the end tag matching the start tag of this element; no children or strings are created.
+   */
+  private void processSkippedChar(char c) throws InvalidXMLException {
+    if (tagIsBeingProcessed()) {
+      tagBeingProcessed.processChar(c);
+      if (!tagBeingProcessed.isStartTag()) {
+        if (openSkippedTags == null) {
+          checkIfValidEndTag();
+        } else {
+          checkIfValidEndTag(openSkippedTags.name);
+        }
+      }
+      if (tagBeingProcessed.isCompleted()) {
+        finishProcessingSkippedTag();
+      }
+    } else if (XMLTag.isStartSpecialCharacter(c)) {
+      startTag(c);
+    } else if (XMLString.isInvalidCharacter(c)) {
+      throw new InvalidXMLException("Invalid character in string " + c);
+    }
+  }
+
+  private void finishProcessingSkippedTag() throws InvalidXMLException {
+    XMLParserMetrics.recordTag();
+    if (tagBeingProcessed.isStartTag()) {
+      openSkippedTags = new OpenSkippedTag(tagBeingProcessed.getTagName(), openSkippedTags);
+    } else if (openSkippedTags == null) {
+      finishProcessingEndTag();
+    } else if (tagBeingProcessed.getTagName().equals(openSkippedTags.name)) {
+      openSkippedTags = openSkippedTags.enclosing;
+    } else {
+      throw new InvalidXMLException("Ending tag should have the same name as starting tag");
+    }
+  }
+
 
   private void finishProcessingEndTag() throws InvalidXMLException {
     if (tagBeingProcessed.getTagName().equals(getStartTagName())) {
-      children.add(tagBeingProcessed);
+      addContent(tagBeingProcessed);
       isComplete = true;
+      fireStringBeforeTag();
+      fireEndTag(tagBeingProcessed);
     } else {
       throw new InvalidXMLException("Ending tag should have the same name as starting tag");
     }
@@ -180,11 +359,61 @@ class XMLElement implements XMLElementComponent{
   }
 
   private void finishProcessingString(char lastProcessedCharacter) throws InvalidXMLException {
-    children.add(stringBeingProcessed);
+    addContent(stringBeingProcessed);
+    stringBeforeTag = stringBeingProcessed;
     startTag(lastProcessedCharacter);
 
   }
 
+  private void addContent(XMLElementComponent component) {
+    if (keepsContent) {
+      addChild(component);
+    }
+  }
+
+  private void addChild(XMLElementComponent component) {
+    synchronized (childLog) {
+      if (childLog.size != childCount) {
+        // Another copy already added its own components after ours
+        childLog = new ChildLog(childLog, childCount);
+      }
+      childLog.add(component);
+    }
+    childCount++;
+    subtreeSize += component instanceof XMLElement ? ((XMLElement) component).subtreeSize : 1;
+  }
+
+  private void fireStartTag(XMLTag tag) {
+    if (eventHandler != null) {
+      try {
+        eventHandler.startTag(tag.getTagName());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void fireEndTag(XMLTag tag) {
+    if (eventHandler != null) {
+      try {
+        eventHandler.endTag(tag.getTagName());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void fireStringBeforeTag() {
+    if (eventHandler != null && stringBeforeTag != null) {
+      try {
+        eventHandler.characters(stringBeforeTag.getString());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    stringBeforeTag = null;
+  }
+
   private void startTag(char startChar) throws InvalidXMLException {
     tagBeingProcessed = new XMLTag();
     tagBeingProcessed.processChar(startChar);
@@ -195,4 +424,57 @@ class XMLElement implements XMLElementComponent{
     stringBeingProcessed.processChar(startChar);
   }
 
+  /**
+   * Append-only array of completed components, shared by an element and its copies. Each of
+   * them sees the prefix of the log that it added itself, and only the one whose prefix is the
+   * whole log can keep appending to it; the others start a log of their own.
+   */
+  private static final class ChildLog {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private volatile XMLElementComponent[] components;
+    private int size;
+
+    ChildLog() {
+      components = new XMLElementComponent[INITIAL_CAPACITY];
+    }
+
+    ChildLog(ChildLog log, int size) {
+      components = Arrays.copyOf(log.components, Math.max(size * 2, INITIAL_CAPACITY));
+      Arrays.fill(components, size, components.length, null);
+      this.size = size;
+    }
+
+    void add(XMLElementComponent component) {
+      if (size == components.length) {
+        components = Arrays.copyOf(components, size * 2);
+      }
+      components[size++] = component;
+    }
+  }
+
+  /**
+   * A tag open inside a skipped element, linked to the tag that encloses it. Nodes are never
+   * changed, so copies of an element share them.
+   */
+  private static final class OpenSkippedTag {
+    private final String name;
+    private final OpenSkippedTag enclosing;
+
+    OpenSkippedTag(String name, OpenSkippedTag enclosing) {
+      this.name = name;
+      this.enclosing = enclosing;
+    }
+
+    static boolean haveSameNames(OpenSkippedTag first, OpenSkippedTag second) {
+      while (first != null && second != null && first != second) {
+        if (!first.name.equals(second.name)) {
+          return false;
+        }
+        first = first.enclosing;
+        second = second.enclosing;
+      }
+      return first == second;
+    }
+  }
 }
@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of the elements of a document by tag name, so that finding the elements with a name or
+ * a path takes a time proportional to the number of elements found instead of the size of the
+ * document.
+ *
+ * <p>The index is built from the events of the document, so it can be filled while parsing, by
+ * giving it to a parser that reports events (e.g. the XMLValidator constructor that takes an
+ * XMLEventHandler), or afterwards with XMLInfoLogger.writeEvents. Elements are identified by
+ * their position: the number of elements that started before them. For every position the
+ * index keeps the tag name, the parent, and the position after the last descendant, so the
+ * descendants of an element are the positions between its own and that one.
+ *
+ * <p>Every distinct path from the root gets an id, from the id of the path of the parent and the
+ * tag name, and the positions are also listed by path id. Finding the elements at a path looks
+ * up one id per tag name of the path, then copies the positions found.
+ */
+final class XMLElementIndex implements XMLEventHandler {
+
+  private static final int NO_PARENT = -1;
+  private static final int NO_PATH = -1;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Map<String, Integer> tagIds = new HashMap<>();
+  private final ArrayList<String> tagNames = new ArrayList<>();
+  private final PositionLists positionsByTagId = new PositionLists();
+  // Keyed by the path id of the parent and the tag id, see getPathKey
+  private final Map<Long, Integer> pathIds = new HashMap<>();
+  private final PositionLists positionsByPathId = new PositionLists();
+
+  private int size;
+  private int[] tagIdsByPosition = new int[INITIAL_CAPACITY];
+  private int[] parents = new int[INITIAL_CAPACITY];
+  private int[] descendantEnds = new int[INITIAL_CAPACITY];
+
+  private int[] openPositions = new int[INITIAL_CAPACITY];
+  private int[] openPathIds = new int[INITIAL_CAPACITY];
+  private int openCount;
+
+  @Override
+  public void startTag(String tagName) {
+    int tagId = getOrCreateTagId(tagName);
+    if (size == tagIdsByPosition.length) {
+      int capacity = size * 2;
+      tagIdsByPosition = Arrays.copyOf(tagIdsByPosition, capacity);
+      parents = Arrays.copyOf(parents, capacity);
+      descendantEnds = Arrays.copyOf(descendantEnds, capacity);
+    }
+    int position = size++;
+    tagIdsByPosition[position] = tagId;
+    parents[position] = openCount == 0 ? NO_PARENT : openPositions[openCount - 1];
+    descendantEnds[position] = -1;
+    positionsByTagId.add(tagId, position);
+    int pathId = getOrCreatePathId(openCount == 0 ? NO_PATH : openPathIds[openCount - 1], tagId);
+    positionsByPathId.add(pathId, position);
+
+    if (openCount == openPositions.length) {
+      openPositions = Arrays.copyOf(openPositions, openCount * 2);
+      openPathIds = Arrays.copyOf(openPathIds, openCount * 2);
+    }
+    openPositions[openCount] = position;
+    openPathIds[openCount] = pathId;
+    openCount++;
+  }
+
+  @Override
+  public void endTag(String tagName) {
+    if (openCount > 0) {
+      int position = openPositions[--openCount];
+      descendantEnds[position] = size;
+    }
+  }
+
+  @Override
+  public void characters(String characters) {
+    // Text is not indexed
+  }
+
+  /**
+   * Returns the number of elements indexed so far.
+   */
+  int size() {
+    return size;
+  }
+
+  String getTagName(int position) {
+    checkPosition(position);
+    return tagNames.get(tagIdsByPosition[position]);
+  }
+
+  /**
+   * Returns the position of the parent of the element at the given position, or -1 for the root.
+   */
+  int getParent(int position) {
+    checkPosition(position);
+    return parents[position];
+  }
+
+  /**
+   * Returns the position after the last descendant of the element at the given position. For an
+   * element that did not end yet, this is the number of elements indexed so far.
+   */
+  int getDescendantEnd(int position) {
+    checkPosition(position);
+    return descendantEnds[position] == -1 ? size : descendantEnds[position];
+  }
+
+  /**
+   * Returns the positions of the elements with the given tag name, in document order.
+   */
+  int[] getPositions(String tagName) {
+    Integer tagId = tagIds.get(tagName);
+    if (tagId == null) {
+      return new int[0];
+    }
+    return positionsByTagId.get(tagId);
+  }
+
+  /**
+   * Returns the positions of the elements whose path from the root is exactly the given tag
+   * names, in document order.
+   *
+   * @param path the tag names of the root, one of its children, and so on
+   */
+  int[] getPositionsAtPath(String... path) {
+    int pathId = NO_PATH;
+    for (String tagName : path) {
+      Integer tagId = tagIds.get(tagName);
+      Integer childPathId = tagId == null ? null : pathIds.get(getPathKey(pathId, tagId));
+      if (childPathId == null) {
+        return new int[0];
+      }
+      pathId = childPathId;
+    }
+    return pathId == NO_PATH ? new int[0] : positionsByPathId.get(pathId);
+  }
+
+  /**
+   * Returns the positions of the elements whose path from the root starts with the given tag
+   * names, that is the elements at that path and all of their descendants, in document order.
+   */
+  int[] getPositionsUnder(String... pathPrefix) {
+    int[] roots = getPositionsAtPath(pathPrefix);
+    int count = 0;
+    for (int root : roots) {
+      count += getDescendantEnd(root) - root;
+    }
+    // Elements with the same path cannot contain each other, so the ranges do not overlap
+    int[] positions = new int[count];
+    int index = 0;
+    for (int root : roots) {
+      for (int position = root, end = getDescendantEnd(root); position < end; position++) {
+        positions[index++] = position;
+      }
+    }
+    return positions;
+  }
+
+  private int getOrCreateTagId(String tagName) {
+    Integer tagId = tagIds.get(tagName);
+    if (tagId == null) {
+      tagId = tagNames.size();
+      tagIds.put(tagName, tagId);
+      tagNames.add(tagName);
+    }
+    return tagId;
+  }
+
+  private int getOrCreatePathId(int parentPathId, int tagId) {
+    Long key = getPathKey(parentPathId, tagId);
+    Integer pathId = pathIds.get(key);
+    if (pathId == null) {
+      pathId = pathIds.size();
+      pathIds.put(key, pathId);
+    }
+    return pathId;
+  }
+
+  private static long getPathKey(int parentPathId, int tagId) {
+    return ((long) parentPathId << 32) | tagId;
+  }
+
+  private void checkPosition(int position) {
+    if (position < 0 || position >= size) {
+      throw new IndexOutOfBoundsException("Invalid element position: " + position);
+    }
+  }
+
+  /**
+   * Lists of positions in document order, one per id, grown as positions are added.
+   */
+  private static final class PositionLists {
+    private final ArrayList<int[]> lists = new ArrayList<>();
+    private int[] counts = new int[INITIAL_CAPACITY];
+
+    void add(int id, int position) {
+      if (id == lists.size()) {
+        lists.add(new int[INITIAL_CAPACITY]);
+        if (id == counts.length) {
+          counts = Arrays.copyOf(counts, id * 2);
+        }
+      }
+      int[] positions = lists.get(id);
+      int count = counts[id];
+      if (count == positions.length) {
+        positions = Arrays.copyOf(positions, count * 2);
+        lists.set(id, positions);
+      }
+      positions[count] = position;
+      counts[id] = count + 1;
+    }
+
+    int[] get(int id) {
+      return Arrays.copyOf(lists.get(id), counts[id]);
+    }
+  }
+}
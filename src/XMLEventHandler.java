@@ -0,0 +1,31 @@
+import java.io.IOException;
+
+/**
+ * This interface represents a receiver of the events found while walking an XML document, in
+ * document order. These are the same events that XMLInfoLogger logs as text.
+ */
+public interface XMLEventHandler {
+  /**
+   * Receive the start tag of an element.
+   *
+   * @param tagName the name of the tag
+   * @throws IOException if the event cannot be written
+   */
+  void startTag(String tagName) throws IOException;
+
+  /**
+   * Receive the end tag of an element.
+   *
+   * @param tagName the name of the tag
+   * @throws IOException if the event cannot be written
+   */
+  void endTag(String tagName) throws IOException;
+
+  /**
+   * Receive the text found between two tags.
+   *
+   * @param characters the text
+   * @throws IOException if the event cannot be written
+   */
+  void characters(String characters) throws IOException;
+}
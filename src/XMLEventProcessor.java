@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parses a document that arrives in chunks and publishes its events as they are found, as the
+ * lines that XMLInfoLogger would log for them (including the new line), so the concatenation of
+ * all the published lines equals the output of XMLInfoLogger for the whole document.
+ *
+ * <p>Chunks can be CharBuffers, or ByteBuffers that are decoded with the charset given to the
+ * constructor; a character split between two ByteBuffers is decoded when the second one arrives.
+ * The next chunk is only requested when every line of the previous ones has been delivered and
+ * the subscriber has requested more, so a slow subscriber slows down the source instead of
+ * making the lines pile up. Only the open elements are kept in memory.
+ *
+ * <p>This processor accepts a single subscriber. Invalid XML is signalled with onError and an
+ * InvalidXMLException, and the source is cancelled.
+ */
+final class XMLEventProcessor implements Flow.Processor<Buffer, String> {
+
+  private static final int CHAR_BUFFER_SIZE = 8192;
+
+  private final CharsetDecoder decoder;
+  private final CharBuffer decodedChars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+  private ByteBuffer undecodedBytes = ByteBuffer.allocate(0);
+  private final XMLElement rootElement;
+  private final StringBuilder line = new StringBuilder();
+  private final XMLTextEventWriter lineWriter = new XMLTextEventWriter(line);
+
+  private final ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Flow.Subscriber<? super String>> subscriber = new AtomicReference<>();
+  private final AtomicLong demand = new AtomicLong();
+  private final AtomicInteger drainRequests = new AtomicInteger();
+  private volatile Flow.Subscription upstream;
+  private volatile boolean isChunkRequested;
+  private volatile boolean isUpstreamDone;
+  private volatile Throwable error;
+  private volatile boolean isCancelled;
+  // Only accessed while draining
+  private boolean isTerminated;
+
+  XMLEventProcessor(Charset charset) {
+    decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    rootElement = new XMLElement(Collections.<String>emptySet(), false, new LineCollector());
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super String> newSubscriber) {
+    if (!subscriber.compareAndSet(null, newSubscriber)) {
+      newSubscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      newSubscriber.onError(new IllegalStateException("Processor already has a subscriber"));
+      return;
+    }
+    newSubscriber.onSubscribe(new Subscription());
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (upstream != null || isCancelled) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    drain();
+  }
+
+  @Override
+  public void onNext(Buffer chunk) {
+    try {
+      if (chunk instanceof CharBuffer) {
+        processChars((CharBuffer) chunk);
+      } else if (chunk instanceof ByteBuffer) {
+        decode((ByteBuffer) chunk, false);
+      } else {
+        throw new IllegalArgumentException("Unsupported buffer: " + chunk.getClass().getName());
+      }
+    } catch (InvalidXMLException | CharacterCodingException | RuntimeException e) {
+      upstream.cancel();
+      fail(e);
+      return;
+    }
+    isChunkRequested = false;
+    drain();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    fail(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    try {
+      decode(ByteBuffer.allocate(0), true);
+    } catch (InvalidXMLException | CharacterCodingException | RuntimeException e) {
+      fail(e);
+      return;
+    }
+    isUpstreamDone = true;
+    drain();
+  }
+
+  private void fail(Throwable throwable) {
+    error = throwable;
+    isUpstreamDone = true;
+    drain();
+  }
+
+  private void decode(ByteBuffer chunk, boolean isEndOfInput)
+      throws InvalidXMLException, CharacterCodingException {
+    ByteBuffer bytes = chunk;
+    if (undecodedBytes.hasRemaining()) {
+      bytes = ByteBuffer.allocate(undecodedBytes.remaining() + chunk.remaining());
+      bytes.put(undecodedBytes).put(chunk).flip();
+    }
+    CoderResult result;
+    do {
+      result = decoder.decode(bytes, decodedChars, isEndOfInput);
+      processDecodedChars();
+      if (result.isError()) {
+        result.throwException();
+      }
+    } while (result.isOverflow());
+    if (isEndOfInput) {
+      while (decoder.flush(decodedChars).isOverflow()) {
+        processDecodedChars();
+      }
+      processDecodedChars();
+    }
+    // What is left is the start of a character that continues in the next chunk
+    undecodedBytes = ByteBuffer.allocate(bytes.remaining());
+    undecodedBytes.put(bytes).flip();
+  }
+
+  private void processDecodedChars() throws InvalidXMLException {
+    decodedChars.flip();
+    processChars(decodedChars);
+    decodedChars.clear();
+  }
+
+  private void processChars(CharBuffer chars) throws InvalidXMLException {
+    while (chars.hasRemaining()) {
+      rootElement.processChar(chars.get());
+    }
+  }
+
+  /**
+   * Delivers the lines the subscriber asked for, requests the next chunk when all of them were
+   * delivered, and signals the end of the stream. Only one thread drains at a time: a thread
+   * that finds another one draining just asks it to make another pass.
+   */
+  private void drain() {
+    if (drainRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int missedRequests = 1;
+    do {
+      Flow.Subscriber<? super String> downstream = subscriber.get();
+      if (downstream != null && !isTerminated) {
+        drainTo(downstream);
+      }
+      missedRequests = drainRequests.addAndGet(-missedRequests);
+    } while (missedRequests != 0);
+  }
+
+  private void drainTo(Flow.Subscriber<? super String> downstream) {
+    if (isCancelled) {
+      isTerminated = true;
+      lines.clear();
+      return;
+    }
+    boolean isDone = isUpstreamDone;
+    Throwable failure = error;
+    if (failure != null) {
+      isTerminated = true;
+      lines.clear();
+      downstream.onError(failure);
+      return;
+    }
+    while (demand.get() > 0 && !lines.isEmpty() && !isCancelled) {
+      demand.decrementAndGet();
+      downstream.onNext(lines.poll());
+    }
+    if (!lines.isEmpty() || isCancelled) {
+      return;
+    }
+    if (isDone) {
+      isTerminated = true;
+      downstream.onComplete();
+    } else if (demand.get() > 0 && upstream != null && !isChunkRequested) {
+      isChunkRequested = true;
+      upstream.request(1);
+    }
+  }
+
+  private final class Subscription implements Flow.Subscription {
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        cancelUpstream();
+        fail(new IllegalArgumentException("Requested a non positive number of lines: " + n));
+        return;
+      }
+      demand.getAndAccumulate(n, (current, added) -> current + added < 0
+          ? Long.MAX_VALUE : current + added);
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      isCancelled = true;
+      cancelUpstream();
+      drain();
+    }
+  }
+
+  private void cancelUpstream() {
+    Flow.Subscription subscription = upstream;
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  private final class LineCollector implements XMLEventHandler {
+    @Override
+    public void startTag(String tagName) throws IOException {
+      lineWriter.startTag(tagName);
+      publishLine();
+    }
+
+    @Override
+    public void endTag(String tagName) throws IOException {
+      lineWriter.endTag(tagName);
+      publishLine();
+    }
+
+    @Override
+    public void characters(String characters) throws IOException {
+      lineWriter.characters(characters);
+      publishLine();
+    }
+
+    private void publishLine() {
+      lines.add(line.toString());
+      line.setLength(0);
+    }
+  }
+}
@@ -1,18 +1,34 @@
-import java.util.ArrayList;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public final class XMLInfoLogger extends AbstractXMLParser{
 
-  private static final String START_TAG_STRING = "Started:";
-  private static final String END_TAG_STRING = "Ended:";
-  private static final String CHARACTERS_STRING = "Characters:";
-
-  private String output = "";
-
 
   XMLInfoLogger() {
     super(new XMLElement());
   }
 
+  /**
+   * Creates a logger that only logs the start and end of the elements with the given tag
+   * names, without anything inside them.
+   */
+  XMLInfoLogger(Set<String> skippedTagNames) {
+    super(new XMLElement(Collections.unmodifiableSet(new HashSet<>(skippedTagNames))));
+  }
+
   XMLInfoLogger(XMLElement rootElement) {
     super(rootElement);
   }
@@ -24,52 +40,145 @@ public final class XMLInfoLogger extends AbstractXMLParser{
 
   @Override
   public String output() {
-    processXMLElement(rootElement);
-    return output;
+    StringBuilder output = new StringBuilder();
+    try {
+      writeOutput((Appendable) output);
+    } catch (IOException e) {
+      // A StringBuilder never throws
+      throw new UncheckedIOException(e);
+    }
+    return output.toString();
   }
 
-  private void processXMLElement(XMLElement element) {
-    processChildren(element);
-    XMLElement childBeingProcessed = element.getChildBeingProcessed();
-    if (childBeingProcessed != null && !childBeingProcessed.isCompleted()) {
-      processXMLElement(element.getChildBeingProcessed());
+  /**
+   * Returns the same output as {@link #output()}, rendering the children of the root in
+   * parallel in the given pool when the document is complete. Incomplete documents are rendered
+   * by the calling thread, like output() does.
+   *
+   * @param pool the pool that renders the children
+   * @return the output of the parser as a String object
+   */
+  public String output(ForkJoinPool pool) {
+    if (!rootElement.isCompleted()) {
+      return output();
+    }
+    long outputStart = XMLParserMetrics.startTimer();
+    List<XMLElementComponent> children = rootElement.getChildren();
+    List<CharSequence> pieces = pool.invoke(new XMLInfoLoggerTask(children, 0, children.size()));
+    int length = 0;
+    for (CharSequence piece : pieces) {
+      length += piece.length();
+    }
+    StringBuilder output = new StringBuilder(length);
+    for (CharSequence piece : pieces) {
+      output.append(piece);
     }
+    XMLParserMetrics.recordOutput(outputStart);
+    return output.toString();
+  }
+
+  /**
+   * Writes the same lines returned by {@link #output()} to the given destination as they are
+   * produced, instead of building them in memory. The destination is not flushed.
+   *
+   * @param out where the lines are appended
+   * @throws IOException if the destination cannot be written
+   */
+  public void writeOutput(Appendable out) throws IOException {
+    writeEvents(new XMLTextEventWriter(out));
+  }
+
+  /**
+   * Writes the output to the given writer through a buffer, so that it receives a few large
+   * writes instead of one per line. The writer is flushed but not closed.
+   */
+  public void writeOutput(Writer writer) throws IOException {
+    BufferedWriter bufferedWriter = new BufferedWriter(writer);
+    writeOutput((Appendable) bufferedWriter);
+    bufferedWriter.flush();
+  }
+
+  /**
+   * Writes the output encoded as UTF-8 to the given channel, in buffered batches. The channel is
+   * not closed.
+   */
+  public void writeOutput(WritableByteChannel channel) throws IOException {
+    writeOutput(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
   }
 
-  private void processChildren(XMLElement element) {
-    ArrayList<XMLElementComponent> children = element.getChildren();
-    for (int i = 0; i < children.size(); i++) {
-      XMLElementComponent child = children.get(i);
-      if (child instanceof XMLElement) {
-        processXMLElement((XMLElement) child);
-      } else if (child instanceof XMLTag) {
-        processXMLTag((XMLTag) child);
-      } else if (child instanceof XMLString) {
-        // If there is a next complete element, string is valid
-        if (i != children.size() - 1) {
-          processXMLString((XMLString) child);
-          // If the processing element has already a starting tag
-        } else if (childBeingProcessedHasValidStartTag(element.getChildBeingProcessed())) {
-          processXMLString((XMLString) child);
+  /**
+   * Writes the output as a compact binary event log that can be read back with
+   * XMLBinaryEventReader. The stream is flushed but not closed.
+   */
+  public void writeBinaryOutput(OutputStream out) throws IOException {
+    XMLBinaryEventWriter writer = new XMLBinaryEventWriter(out);
+    writeEvents(writer);
+    writer.flush();
+  }
+
+  /**
+   * Sends the events that make up the output to the given handler, in the order they appear
+   * in the output.
+   *
+   * @param handler the receiver of the events
+   * @throws IOException if the handler fails to process an event
+   */
+  public void writeEvents(XMLEventHandler handler) throws IOException {
+    long outputStart = XMLParserMetrics.startTimer();
+    processXMLElement(rootElement, handler);
+    XMLParserMetrics.recordOutput(outputStart);
+  }
+
+  // Elements are visited with a stack of their own instead of recursive calls, so deep
+  // documents do not overflow the stack of the thread
+  private void processXMLElement(XMLElement element, XMLEventHandler handler) throws IOException {
+    Deque<ElementVisit> visits = new ArrayDeque<>();
+    visits.push(new ElementVisit(element));
+    while (!visits.isEmpty()) {
+      ElementVisit visit = visits.peek();
+      if (visit.nextChild < visit.children.size()) {
+        processChild(visits, visit, handler);
+      } else {
+        visits.pop();
+        XMLElement childBeingProcessed = visit.element.getChildBeingProcessed();
+        if (childBeingProcessed != null && !childBeingProcessed.isCompleted()) {
+          visits.push(new ElementVisit(childBeingProcessed));
         }
       }
     }
   }
 
-  private void processXMLTag(XMLTag tag) {
+  private void processChild(Deque<ElementVisit> visits, ElementVisit visit,
+      XMLEventHandler handler) throws IOException {
+    List<XMLElementComponent> children = visit.children;
+    int i = visit.nextChild++;
+    XMLElementComponent child = children.get(i);
+    if (child instanceof XMLElement) {
+      visits.push(new ElementVisit((XMLElement) child));
+    } else if (child instanceof XMLTag) {
+      processXMLTag((XMLTag) child, handler);
+    } else if (child instanceof XMLString) {
+      // If there is a next complete element, string is valid
+      if (i != children.size() - 1) {
+        processXMLString((XMLString) child, handler);
+        // If the processing element has already a starting tag
+      } else if (childBeingProcessedHasValidStartTag(visit.element.getChildBeingProcessed())) {
+        processXMLString((XMLString) child, handler);
+      }
+    }
+  }
+
+  private void processXMLTag(XMLTag tag, XMLEventHandler handler) throws IOException {
     if (tag.isStartTag()) {
-      appendToOutput(START_TAG_STRING + tag.getTagName());
+      handler.startTag(tag.getTagName());
     } else {
-      appendToOutput(END_TAG_STRING + tag.getTagName());
+      handler.endTag(tag.getTagName());
     }
 
   }
-  private void appendToOutput(String stringToAppend) {
-    output = output + stringToAppend + "\n";
-  }
 
-  private void processXMLString(XMLString string) {
-    appendToOutput(CHARACTERS_STRING + string.getString());
+  private void processXMLString(XMLString string, XMLEventHandler handler) throws IOException {
+    handler.characters(string.getString());
   }
 
   private boolean childBeingProcessedHasValidStartTag(XMLElement childBeingProcessed) {
@@ -80,4 +189,17 @@ public final class XMLInfoLogger extends AbstractXMLParser{
     }
   }
 
+  /**
+   * An element whose children are being processed, and the next of them to process.
+   */
+  private static final class ElementVisit {
+    private final XMLElement element;
+    private final List<XMLElementComponent> children;
+    private int nextChild;
+
+    ElementVisit(XMLElement element) {
+      this.element = element;
+      this.children = element.getChildren();
+    }
+  }
 }
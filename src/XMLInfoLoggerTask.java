@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Renders the XMLInfoLogger lines of a range of the children of a completed element, in
+ * parallel with the other ranges. The work of a range is its number of components, counting
+ * the components inside its elements. A range with more than SEQUENTIAL_THRESHOLD components is
+ * split in two parts of about the same work, and a single element with more than that is split
+ * among its own children, so a few large elements are rendered in parallel as well as many
+ * small ones. Smaller ranges are rendered by the task that reaches them.
+ *
+ * <p>Of the two parts of a range, the one with less work is forked and the task goes on with
+ * the other one, so a task goes down deep documents without a deep stack, and tasks that join
+ * the tasks they forked are nested at most as many times as the work can be halved.
+ *
+ * <p>The result is the list of pieces of text of the range, in document order, so putting
+ * together the results of two ranges does not copy their text.
+ */
+final class XMLInfoLoggerTask extends RecursiveTask<List<CharSequence>> {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+  // Tasks are never serialized
+  private final transient List<XMLElementComponent> children;
+  private final int from;
+  private final int to;
+
+  private transient XMLTextEventWriter writer;
+
+  XMLInfoLoggerTask(List<XMLElementComponent> children, int from, int to) {
+    this.children = children;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected List<CharSequence> compute() {
+    // Forked tasks of the parts before the range being rendered, in document order, and of the
+    // parts after it, the nearest on top
+    List<XMLInfoLoggerTask> tasksBefore = new ArrayList<>();
+    Deque<XMLInfoLoggerTask> tasksAfter = new ArrayDeque<>();
+    List<XMLElementComponent> rangeChildren = children;
+    int start = from;
+    int end = to;
+    long work = getWork(rangeChildren, start, end);
+    while (work > SEQUENTIAL_THRESHOLD) {
+      if (end - start == 1) {
+        // The start tag, content and end tag of an element are its children
+        rangeChildren = ((XMLElement) rangeChildren.get(start)).getChildren();
+        start = 0;
+        end = rangeChildren.size();
+        continue;
+      }
+      int middle = getMiddle(rangeChildren, start, end, work);
+      long firstPartWork = getWork(rangeChildren, start, middle);
+      if (firstPartWork <= work - firstPartWork) {
+        XMLInfoLoggerTask firstPart = new XMLInfoLoggerTask(rangeChildren, start, middle);
+        firstPart.fork();
+        tasksBefore.add(firstPart);
+        start = middle;
+        work -= firstPartWork;
+      } else {
+        XMLInfoLoggerTask secondPart = new XMLInfoLoggerTask(rangeChildren, middle, end);
+        secondPart.fork();
+        tasksAfter.push(secondPart);
+        end = middle;
+        work = firstPartWork;
+      }
+    }
+
+    StringBuilder output = new StringBuilder();
+    writer = new XMLTextEventWriter(output);
+    try {
+      renderChildren(rangeChildren, start, end);
+    } catch (IOException e) {
+      // Writing to a StringBuilder never fails
+      throw new UncheckedIOException(e);
+    }
+    List<CharSequence> pieces = new ArrayList<>();
+    for (XMLInfoLoggerTask task : tasksBefore) {
+      pieces.addAll(task.join());
+    }
+    pieces.add(output);
+    for (XMLInfoLoggerTask task : tasksAfter) {
+      pieces.addAll(task.join());
+    }
+    return pieces;
+  }
+
+  /**
+   * Returns the end of the first part of the range, so that both parts have about half of the
+   * given work of the range and neither is empty.
+   */
+  private static int getMiddle(List<XMLElementComponent> rangeChildren, int start, int end,
+      long work) {
+    long firstPartWork = getWork(rangeChildren.get(start));
+    int middle = start + 1;
+    while (middle < end - 1
+        && firstPartWork + getWork(rangeChildren.get(middle)) <= work / 2) {
+      firstPartWork += getWork(rangeChildren.get(middle));
+      middle++;
+    }
+    return middle;
+  }
+
+  private static long getWork(List<XMLElementComponent> rangeChildren, int start, int end) {
+    long work = 0;
+    for (int i = start; i < end; i++) {
+      work += getWork(rangeChildren.get(i));
+    }
+    return work;
+  }
+
+  private static long getWork(XMLElementComponent child) {
+    return child instanceof XMLElement ? ((XMLElement) child).getSubtreeSize() : 1;
+  }
+
+  private void renderChildren(List<XMLElementComponent> elementChildren, int start, int end)
+      throws IOException {
+    for (int i = start; i < end; i++) {
+      XMLElementComponent child = elementChildren.get(i);
+      if (child instanceof XMLElement) {
+        List<XMLElementComponent> grandChildren = ((XMLElement) child).getChildren();
+        renderChildren(grandChildren, 0, grandChildren.size());
+      } else if (child instanceof XMLTag) {
+        XMLTag tag = (XMLTag) child;
+        if (tag.isStartTag()) {
+          writer.startTag(tag.getTagName());
+        } else {
+          writer.endTag(tag.getTagName());
+        }
+      } else if (child instanceof XMLString) {
+        // Every string of a completed element is followed by a tag, so it is always logged
+        writer.characters(((XMLString) child).getString());
+      }
+    }
+  }
+}
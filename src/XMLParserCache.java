@@ -0,0 +1,213 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache of parsed documents, for applications that parse the same documents over and
+ * over. Documents are looked up by a 64 bit hash of their content, and every entry keeps a copy
+ * of its document that is compared with the document looked up, since different documents can
+ * have the same hash.
+ *
+ * <p>Every entry keeps the parser that resulted from the whole document and its output, or the
+ * message of the InvalidXMLException thrown while parsing it. Parsers never change after they
+ * are created (input returns a new parser), so the cached ones are shared by all callers.
+ * Entries are weighted by the length of the document plus the length of the output, and the
+ * least recently used ones are evicted when the total weight goes over the maximum.
+ *
+ * <p>The cache can be used from several threads at the same time. Parsing happens outside of
+ * the lock, so two threads that miss the same document may both parse it.
+ */
+final class XMLParserCache {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final Supplier<? extends AbstractXMLParser> parserFactory;
+  private final long maxWeight;
+  private final ToLongFunction<CharSequence> hashFunction;
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long weight;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Creates a cache of the results of the parsers returned by the given factory.
+   *
+   * @param parserFactory creates the empty parser that every document is fed to
+   * @param maxWeight the maximum sum of the document and output lengths of the entries
+   */
+  XMLParserCache(Supplier<? extends AbstractXMLParser> parserFactory, long maxWeight) {
+    this(parserFactory, maxWeight, XMLParserCache::hash);
+  }
+
+  /**
+   * Creates a cache that looks up documents by the given hash instead of the FNV-1a hash of
+   * their characters.
+   */
+  XMLParserCache(Supplier<? extends AbstractXMLParser> parserFactory, long maxWeight,
+      ToLongFunction<CharSequence> hashFunction) {
+    if (maxWeight < 0) {
+      throw new IllegalArgumentException("Maximum weight cannot be negative: " + maxWeight);
+    }
+    this.parserFactory = parserFactory;
+    this.maxWeight = maxWeight;
+    this.hashFunction = hashFunction;
+  }
+
+  /**
+   * Returns the parser after handling the whole document, from the cache if possible.
+   *
+   * @param document the characters of the document
+   * @return the parser after handling all of the characters of the document
+   * @throws InvalidXMLException if the document is invalid
+   */
+  XMLParser parse(CharSequence document) throws InvalidXMLException {
+    return getEntry(document).getParser();
+  }
+
+  /**
+   * Returns the output of the parser after handling the whole document, from the cache if
+   * possible.
+   *
+   * @param document the characters of the document
+   * @return the output of the parser after handling all of the characters of the document
+   * @throws InvalidXMLException if the document is invalid
+   */
+  String output(CharSequence document) throws InvalidXMLException {
+    return getEntry(document).getOutput();
+  }
+
+  synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  synchronized long getMissCount() {
+    return missCount;
+  }
+
+  synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  synchronized long getWeight() {
+    return weight;
+  }
+
+  synchronized void clear() {
+    entries.clear();
+    weight = 0;
+  }
+
+  private Entry getEntry(CharSequence document) {
+    Key key = new Key(hashFunction.applyAsLong(document), document);
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        hitCount++;
+        return entry;
+      }
+      missCount++;
+    }
+    Entry entry = parseEntry(document);
+    synchronized (this) {
+      if (entry.weight <= maxWeight) {
+        // The document given may change once this call returns
+        Entry previous = entries.put(new Key(key.hash, document.toString()), entry);
+        if (previous != null) {
+          weight -= previous.weight;
+        }
+        weight += entry.weight;
+        evict();
+      }
+    }
+    return entry;
+  }
+
+  private Entry parseEntry(CharSequence document) {
+    try {
+      XMLParser parser = parserFactory.get().input(document);
+      return new Entry(parser, parser.output(), null, document.length());
+    } catch (InvalidXMLException e) {
+      return new Entry(null, null, e.getMessage(), document.length());
+    }
+  }
+
+  private void evict() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      weight -= iterator.next().weight;
+      iterator.remove();
+      evictionCount++;
+    }
+  }
+
+  private static long hash(CharSequence document) {
+    long hash = FNV_OFFSET_BASIS;
+    for (int i = 0, n = document.length(); i < n; i++) {
+      hash = (hash ^ document.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static final class Key {
+    private final long hash;
+    private final CharSequence document;
+
+    Key(long hash, CharSequence document) {
+      this.hash = hash;
+      this.document = document;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key otherKey = (Key) other;
+      return hash == otherKey.hash && CharSequence.compare(document, otherKey.document) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(hash);
+    }
+  }
+
+  private static final class Entry {
+    private final XMLParser parser;
+    private final String output;
+    private final String errorMessage;
+    private final long weight;
+
+    Entry(XMLParser parser, String output, String errorMessage, int documentLength) {
+      this.parser = parser;
+      this.output = output;
+      this.errorMessage = errorMessage;
+      this.weight = (long) documentLength + (output == null ? 0 : output.length());
+    }
+
+    XMLParser getParser() throws InvalidXMLException {
+      checkValid();
+      return parser;
+    }
+
+    String getOutput() throws InvalidXMLException {
+      checkValid();
+      return output;
+    }
+
+    private void checkValid() throws InvalidXMLException {
+      if (errorMessage != null) {
+        throw new InvalidXMLException(errorMessage);
+      }
+    }
+  }
+}
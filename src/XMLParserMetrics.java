@@ -0,0 +1,197 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Counters of the work done by all the parsers of the application. Recording only happens when
+ * the system property "xmlparser.metrics" is set to true when this class is loaded; otherwise
+ * every record method is a constant check that the JIT removes.
+ */
+final class XMLParserMetrics implements XMLParserMetricsMXBean {
+
+  static final boolean ENABLED = Boolean.getBoolean("xmlparser.metrics");
+
+  private static final String OBJECT_NAME = "XMLParser:type=Metrics";
+
+  // Rough size of a copied XMLElement, XMLTag or XMLString with its fields, without strings
+  private static final int COMPONENT_BYTES = 32;
+  // Rough size of the object and array header of the characters allocated by a tag name
+  // concatenation, or by a copy of a string that appends after characters of another copy
+  private static final int STRING_OVERHEAD_BYTES = 40;
+
+  private static final XMLParserMetrics INSTANCE = new XMLParserMetrics();
+
+  private static final LongAdder tagsProcessed = new LongAdder();
+  private static final LongAdder textCharacters = new LongAdder();
+  private static final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+  private static final LongAdder inputCopies = new LongAdder();
+  private static final LongAdder componentsCopied = new LongAdder();
+  private static final LongAdder estimatedAllocatedBytes = new LongAdder();
+  private static final LongAdder copyNanos = new LongAdder();
+  private static final LongAdder processNanos = new LongAdder();
+  private static final LongAdder outputNanos = new LongAdder();
+
+  static {
+    if (ENABLED) {
+      FlightRecorder.addPeriodicEvent(XMLParserMetricsEvent.class, () -> {
+        XMLParserMetricsEvent event = new XMLParserMetricsEvent();
+        event.set(snapshot());
+        event.commit();
+      });
+    }
+  }
+
+  private XMLParserMetrics() {
+  }
+
+  static XMLParserMetricsSnapshot snapshot() {
+    return new XMLParserMetricsSnapshot(INSTANCE);
+  }
+
+  static void resetAll() {
+    INSTANCE.reset();
+  }
+
+  /**
+   * Registers the metrics in the platform MBean server, if they are enabled and were not
+   * registered before.
+   */
+  static void registerMBean() throws JMException {
+    if (!ENABLED) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (!server.isRegistered(name)) {
+      server.registerMBean(INSTANCE, name);
+    }
+  }
+
+  static long startTimer() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records the copy of the root element made by an input, started at the given time.
+   *
+   * @return the time the copy ended, to be used as start of the processing
+   */
+  static long recordInputCopy(long startNanos) {
+    if (!ENABLED) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    inputCopies.increment();
+    copyNanos.add(now - startNanos);
+    return now;
+  }
+
+  static void recordProcessing(long startNanos) {
+    if (ENABLED) {
+      processNanos.add(System.nanoTime() - startNanos);
+    }
+  }
+
+  static void recordOutput(long startNanos) {
+    if (ENABLED) {
+      outputNanos.add(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Records the copy of an open element, or of the tag or string being processed by one.
+   * Completed components are shared between copies, so they are not counted.
+   */
+  static void recordComponentCopy() {
+    if (ENABLED) {
+      componentsCopied.increment();
+      estimatedAllocatedBytes.add(COMPONENT_BYTES);
+    }
+  }
+
+  static void recordTag() {
+    if (ENABLED) {
+      tagsProcessed.increment();
+    }
+  }
+
+  static void recordTextCharacter() {
+    if (ENABLED) {
+      textCharacters.increment();
+    }
+  }
+
+  static void recordDepth(int depth) {
+    if (ENABLED) {
+      maxDepth.accumulate(depth);
+    }
+  }
+
+  static void recordStringAllocation(int length) {
+    if (ENABLED) {
+      estimatedAllocatedBytes.add(STRING_OVERHEAD_BYTES + length);
+    }
+  }
+
+  @Override
+  public long getTagsProcessed() {
+    return tagsProcessed.sum();
+  }
+
+  @Override
+  public long getTextCharacters() {
+    return textCharacters.sum();
+  }
+
+  @Override
+  public long getMaxDepth() {
+    return maxDepth.get();
+  }
+
+  @Override
+  public long getInputCopies() {
+    return inputCopies.sum();
+  }
+
+  @Override
+  public long getComponentsCopied() {
+    return componentsCopied.sum();
+  }
+
+  @Override
+  public long getEstimatedAllocatedBytes() {
+    return estimatedAllocatedBytes.sum();
+  }
+
+  @Override
+  public long getCopyNanos() {
+    return copyNanos.sum();
+  }
+
+  @Override
+  public long getProcessNanos() {
+    return processNanos.sum();
+  }
+
+  @Override
+  public long getOutputNanos() {
+    return outputNanos.sum();
+  }
+
+  @Override
+  public void reset() {
+    tagsProcessed.reset();
+    textCharacters.reset();
+    maxDepth.reset();
+    inputCopies.reset();
+    componentsCopied.reset();
+    estimatedAllocatedBytes.reset();
+    copyNanos.reset();
+    processNanos.reset();
+    outputNanos.reset();
+  }
+}
@@ -0,0 +1,61 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event with the totals of the parser metrics. It is emitted periodically while
+ * a recording is running and metrics are enabled.
+ */
+@Name("xmlparser.Metrics")
+@Label("XML Parser Metrics")
+@Category("XML Parser")
+@Description("Totals of the work done by the XML parsers")
+@Period("1 s")
+final class XMLParserMetricsEvent extends Event {
+
+  @Label("Tags Processed")
+  long tagsProcessed;
+
+  @Label("Text Characters")
+  long textCharacters;
+
+  @Label("Max Depth")
+  long maxDepth;
+
+  @Label("Input Copies")
+  long inputCopies;
+
+  @Label("Components Copied")
+  long componentsCopied;
+
+  @Label("Estimated Allocated Bytes")
+  long estimatedAllocatedBytes;
+
+  @Label("Copy Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long copyNanos;
+
+  @Label("Process Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long processNanos;
+
+  @Label("Output Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long outputNanos;
+
+  void set(XMLParserMetricsSnapshot snapshot) {
+    tagsProcessed = snapshot.getTagsProcessed();
+    textCharacters = snapshot.getTextCharacters();
+    maxDepth = snapshot.getMaxDepth();
+    inputCopies = snapshot.getInputCopies();
+    componentsCopied = snapshot.getComponentsCopied();
+    estimatedAllocatedBytes = snapshot.getEstimatedAllocatedBytes();
+    copyNanos = snapshot.getCopyNanos();
+    processNanos = snapshot.getProcessNanos();
+    outputNanos = snapshot.getOutputNanos();
+  }
+}
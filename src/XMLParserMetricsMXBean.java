@@ -0,0 +1,21 @@
+/**
+ * Management interface of the parser metrics, registered in the platform MBean server by
+ * {@link XMLParserMetrics#registerMBean()}.
+ *
+ * <p>Completed components are shared between the copies made by inputs, so the components
+ * copied are only the open elements and the tags and strings they are processing. The
+ * estimated allocated bytes add up those copies, the tag names being built, and the copies of
+ * a string that had to take their characters out of the builder shared with another copy.
+ */
+public interface XMLParserMetricsMXBean {
+  long getTagsProcessed();
+  long getTextCharacters();
+  long getMaxDepth();
+  long getInputCopies();
+  long getComponentsCopied();
+  long getEstimatedAllocatedBytes();
+  long getCopyNanos();
+  long getProcessNanos();
+  long getOutputNanos();
+  void reset();
+}
@@ -0,0 +1,77 @@
+/**
+ * Immutable view of the parser metrics at the moment {@link XMLParserMetrics#snapshot()} was
+ * called.
+ */
+final class XMLParserMetricsSnapshot {
+
+  private final long tagsProcessed;
+  private final long textCharacters;
+  private final long maxDepth;
+  private final long inputCopies;
+  private final long componentsCopied;
+  private final long estimatedAllocatedBytes;
+  private final long copyNanos;
+  private final long processNanos;
+  private final long outputNanos;
+
+  XMLParserMetricsSnapshot(XMLParserMetricsMXBean metrics) {
+    tagsProcessed = metrics.getTagsProcessed();
+    textCharacters = metrics.getTextCharacters();
+    maxDepth = metrics.getMaxDepth();
+    inputCopies = metrics.getInputCopies();
+    componentsCopied = metrics.getComponentsCopied();
+    estimatedAllocatedBytes = metrics.getEstimatedAllocatedBytes();
+    copyNanos = metrics.getCopyNanos();
+    processNanos = metrics.getProcessNanos();
+    outputNanos = metrics.getOutputNanos();
+  }
+
+  long getTagsProcessed() {
+    return tagsProcessed;
+  }
+
+  long getTextCharacters() {
+    return textCharacters;
+  }
+
+  long getMaxDepth() {
+    return maxDepth;
+  }
+
+  long getInputCopies() {
+    return inputCopies;
+  }
+
+  long getComponentsCopied() {
+    return componentsCopied;
+  }
+
+  long getEstimatedAllocatedBytes() {
+    return estimatedAllocatedBytes;
+  }
+
+  long getCopyNanos() {
+    return copyNanos;
+  }
+
+  long getProcessNanos() {
+    return processNanos;
+  }
+
+  long getOutputNanos() {
+    return outputNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "tags=" + tagsProcessed
+        + " textCharacters=" + textCharacters
+        + " maxDepth=" + maxDepth
+        + " inputCopies=" + inputCopies
+        + " componentsCopied=" + componentsCopied
+        + " estimatedAllocatedBytes=" + estimatedAllocatedBytes
+        + " copyNanos=" + copyNanos
+        + " processNanos=" + processNanos
+        + " outputNanos=" + outputNanos;
+  }
+}
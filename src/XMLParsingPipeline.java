@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Parses a document read from a stream with reading, decoding and parsing running at the same
+ * time, each in its own thread: a reader thread reads bytes from the stream, a decoder thread
+ * turns them into characters, and the calling thread feeds the characters to a single copy of
+ * the root element of the parser.
+ *
+ * <p>Each pair of stages shares a fixed set of buffers that go round between two bounded
+ * queues: the consumer returns a buffer to the free queue once it is done with it, and the
+ * producer blocks when no buffer is free. Nothing is allocated per buffer, and a stage that is
+ * faster than the next one just waits for it, so the pipeline goes as fast as its slowest stage.
+ *
+ * <p>Compressed input is decompressed in the reader thread when the stream given to parse
+ * decompresses, e.g. a GZIPInputStream.
+ */
+final class XMLParsingPipeline {
+
+  // Room left at the start of every byte buffer for the bytes of a character that started at
+  // the end of the previous buffer, so the decoder does not have to copy the buffer
+  private static final int CARRY_BYTES = 8;
+
+  private static final ByteBuffer END_OF_BYTES = ByteBuffer.allocate(0);
+  private static final CharBuffer END_OF_CHARS = CharBuffer.allocate(0);
+
+  private final int bufferSize;
+  private final int bufferCount;
+
+  /**
+   * Creates a pipeline with the given buffers between every two stages.
+   *
+   * @param bufferSize the number of bytes or characters of every buffer
+   * @param bufferCount the number of buffers between every two stages
+   */
+  XMLParsingPipeline(int bufferSize, int bufferCount) {
+    if (bufferSize <= 0 || bufferCount <= 0) {
+      throw new IllegalArgumentException("Buffer size and count must be positive");
+    }
+    this.bufferSize = bufferSize;
+    this.bufferCount = bufferCount;
+  }
+
+  /**
+   * Feeds the whole stream to the given parser. The stream is not closed.
+   *
+   * @param parser the parser to give the characters to
+   * @param in the stream with the document
+   * @param charset the charset of the document
+   * @return the parser after handling all of the characters of the stream
+   * @throws IOException if the stream cannot be read or decoded
+   * @throws InvalidXMLException if the document is invalid
+   */
+  XMLParser parse(AbstractXMLParser parser, InputStream in, Charset charset)
+      throws IOException, InvalidXMLException {
+    Run run = new Run(in, charset);
+    Thread reader = new Thread(run::read, "xml-pipeline-reader");
+    Thread decoder = new Thread(run::decode, "xml-pipeline-decoder");
+    reader.setDaemon(true);
+    decoder.setDaemon(true);
+    reader.start();
+    decoder.start();
+    try {
+      return run.parse(parser);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing");
+    } finally {
+      // Stops the other stages if parsing ended early
+      reader.interrupt();
+      decoder.interrupt();
+    }
+  }
+
+  /**
+   * The buffers and state of a single parse.
+   */
+  private final class Run {
+    private final InputStream in;
+    private final CharsetDecoder decoder;
+    private final BlockingQueue<ByteBuffer> freeBytes = new ArrayBlockingQueue<>(bufferCount);
+    private final BlockingQueue<ByteBuffer> filledBytes = new ArrayBlockingQueue<>(bufferCount + 1);
+    private final BlockingQueue<CharBuffer> freeChars = new ArrayBlockingQueue<>(bufferCount);
+    private final BlockingQueue<CharBuffer> filledChars = new ArrayBlockingQueue<>(bufferCount + 1);
+    private volatile Throwable failure;
+
+    Run(InputStream in, Charset charset) {
+      this.in = in;
+      this.decoder = charset.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+      for (int i = 0; i < bufferCount; i++) {
+        freeBytes.add(ByteBuffer.allocate(CARRY_BYTES + bufferSize));
+        freeChars.add(CharBuffer.allocate(bufferSize));
+      }
+    }
+
+    private synchronized void fail(Throwable throwable) {
+      // Keeps the first failure, later ones are usually caused by it
+      if (failure == null) {
+        failure = throwable;
+      }
+    }
+
+    void read() {
+      try {
+        try {
+          while (true) {
+            ByteBuffer bytes = freeBytes.take();
+            int read = in.read(bytes.array(), CARRY_BYTES, bufferSize);
+            if (read < 0) {
+              break;
+            }
+            bytes.limit(CARRY_BYTES + read).position(CARRY_BYTES);
+            filledBytes.put(bytes);
+          }
+        } catch (IOException | RuntimeException e) {
+          fail(e);
+        }
+        filledBytes.put(END_OF_BYTES);
+      } catch (InterruptedException e) {
+        // Parsing ended, nothing else to do
+      }
+    }
+
+    void decode() {
+      try {
+        CharBuffer chars = freeChars.take();
+        byte[] carry = new byte[CARRY_BYTES];
+        int carryLength = 0;
+        try {
+          while (true) {
+            ByteBuffer bytes = filledBytes.take();
+            if (bytes == END_OF_BYTES) {
+              break;
+            }
+            if (carryLength > 0) {
+              bytes.position(CARRY_BYTES - carryLength);
+              bytes.put(carry, 0, carryLength).position(CARRY_BYTES - carryLength);
+            }
+            chars = decode(bytes, chars, false);
+            carryLength = bytes.remaining();
+            bytes.get(carry, 0, carryLength);
+            freeBytes.put(bytes);
+          }
+          chars = decode(ByteBuffer.wrap(carry, 0, carryLength), chars, true);
+          while (decoder.flush(chars).isOverflow()) {
+            chars = passChars(chars);
+          }
+          if (chars.position() > 0) {
+            passChars(chars);
+          }
+        } catch (IOException | RuntimeException e) {
+          fail(e);
+        }
+        filledChars.put(END_OF_CHARS);
+      } catch (InterruptedException e) {
+        // Parsing ended, nothing else to do
+      }
+    }
+
+    /**
+     * Decodes all the complete characters of bytes, passing chars to the parser every time it
+     * fills up.
+     *
+     * @return the buffer that received the last characters, which may not be full yet
+     */
+    private CharBuffer decode(ByteBuffer bytes, CharBuffer chars, boolean isEndOfInput)
+        throws IOException, InterruptedException {
+      while (true) {
+        CoderResult result = decoder.decode(bytes, chars, isEndOfInput);
+        if (result.isError()) {
+          result.throwException();
+        }
+        if (!result.isOverflow()) {
+          return chars;
+        }
+        chars = passChars(chars);
+      }
+    }
+
+    private CharBuffer passChars(CharBuffer chars) throws InterruptedException {
+      chars.flip();
+      filledChars.put(chars);
+      CharBuffer freeBuffer = freeChars.take();
+      freeBuffer.clear();
+      return freeBuffer;
+    }
+
+    XMLParser parse(AbstractXMLParser parser)
+        throws IOException, InvalidXMLException, InterruptedException {
+      XMLElement rootElementCopy = new XMLElement(parser.rootElement);
+      while (true) {
+        CharBuffer chars = filledChars.take();
+        if (chars == END_OF_CHARS) {
+          break;
+        }
+        char[] array = chars.array();
+        for (int i = chars.position(), end = chars.limit(); i < end; i++) {
+          rootElementCopy.processChar(array[i]);
+        }
+        freeChars.put(chars);
+      }
+      Throwable stageFailure = failure;
+      if (stageFailure instanceof IOException) {
+        throw (IOException) stageFailure;
+      } else if (stageFailure instanceof RuntimeException) {
+        throw (RuntimeException) stageFailure;
+      }
+      return parser.createXMLParser(rootElementCopy);
+    }
+  }
+}
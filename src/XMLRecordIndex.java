@@ -0,0 +1,275 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Index of where every child of the root element (a record) starts and ends in a UTF-8 file, so
+ * that a single record can be parsed without reading the file up to it.
+ *
+ * <p>The index is built while the whole file is validated, and can be saved next to the file.
+ * To read a record, only its bytes are mapped into memory and parsed as a document of its own:
+ * at the start of a record the only state of the validation is the open root element, so no
+ * other checkpoint of the parser is needed.
+ */
+final class XMLRecordIndex {
+
+  private static final int MAGIC = 0x58524958; // "XRIX"
+  private static final int VERSION = 1;
+  private static final String INDEX_FILE_SUFFIX = ".idx";
+  // Magic number, version, file size, last modified time and record count
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+  // Start and end offsets
+  private static final int RECORD_SIZE = 8 + 8;
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final long fileSize;
+  private final long lastModified;
+  private final long[] starts;
+  private final long[] ends;
+
+  private XMLRecordIndex(long fileSize, long lastModified, long[] starts, long[] ends) {
+    this.fileSize = fileSize;
+    this.lastModified = lastModified;
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  /**
+   * Validates the given UTF-8 file and indexes its records.
+   *
+   * @param file the file to index
+   * @return the index of the records of the file
+   * @throws IOException if the file cannot be read or is not valid UTF-8
+   * @throws InvalidXMLException if the file is not valid XML
+   */
+  static XMLRecordIndex build(Path file) throws IOException, InvalidXMLException {
+    long fileSize = Files.size(file);
+    long lastModified = Files.getLastModifiedTime(file).toMillis();
+    RecordCollector collector = new RecordCollector();
+    XMLElement rootElement = new XMLElement(Collections.<String>emptySet(), false, collector);
+    try (Reader reader = new InputStreamReader(Files.newInputStream(file),
+        StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT))) {
+      char[] buffer = new char[READ_BUFFER_SIZE];
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+        for (int i = 0; i < read; i++) {
+          char c = buffer[i];
+          if (XMLTag.isStartSpecialCharacter(c)) {
+            collector.tagStart = collector.offset;
+          }
+          collector.offset += getUtf8Length(c);
+          rootElement.processChar(c);
+        }
+      }
+    }
+    if (!rootElement.isCompleted()) {
+      throw new InvalidXMLException("Incomplete document: " + file);
+    }
+    return new XMLRecordIndex(fileSize, lastModified,
+        Arrays.copyOf(collector.starts, collector.count),
+        Arrays.copyOf(collector.ends, collector.count));
+  }
+
+  /**
+   * Returns the index saved next to the given file if it is still up to date, or builds and saves
+   * a new one otherwise, including when the saved index cannot be read.
+   */
+  static XMLRecordIndex loadOrBuild(Path file) throws IOException, InvalidXMLException {
+    Path indexFile = getIndexFile(file);
+    try {
+      XMLRecordIndex index = load(indexFile);
+      if (index.fileSize == Files.size(file)
+          && index.lastModified == Files.getLastModifiedTime(file).toMillis()) {
+        return index;
+      }
+    } catch (IOException e) {
+      // Not built yet, or not readable: a save interrupted by an older version, or a corrupt file
+    }
+    XMLRecordIndex index = build(file);
+    index.save(indexFile);
+    return index;
+  }
+
+  /**
+   * Returns where the index of the given file is saved by loadOrBuild.
+   */
+  static Path getIndexFile(Path file) {
+    return file.resolveSibling(file.getFileName() + INDEX_FILE_SUFFIX);
+  }
+
+  static XMLRecordIndex load(Path indexFile) throws IOException {
+    long indexFileSize = Files.size(indexFile);
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(indexFile)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a record index: " + indexFile);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported record index version: " + version);
+      }
+      long fileSize = in.readLong();
+      long lastModified = in.readLong();
+      int count = in.readInt();
+      if (count < 0 || count > (indexFileSize - HEADER_SIZE) / RECORD_SIZE) {
+        throw new IOException("Corrupt record index: " + indexFile);
+      }
+      long[] starts = new long[count];
+      long[] ends = new long[count];
+      for (int i = 0; i < count; i++) {
+        starts[i] = in.readLong();
+        ends[i] = in.readLong();
+      }
+      return new XMLRecordIndex(fileSize, lastModified, starts, ends);
+    }
+  }
+
+  /**
+   * Saves the index to the given file. The index is written to a temporary file in the same
+   * directory that then replaces the given file, so readers never see a partly written index.
+   */
+  void save(Path indexFile) throws IOException {
+    Path directory = indexFile.toAbsolutePath().getParent();
+    Path temporaryFile = Files.createTempFile(directory,
+        indexFile.getFileName().toString(), ".tmp");
+    try {
+      write(temporaryFile);
+      Files.move(temporaryFile, indexFile,
+          StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  private void write(Path indexFile) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(fileSize);
+      out.writeLong(lastModified);
+      out.writeInt(starts.length);
+      for (int i = 0; i < starts.length; i++) {
+        out.writeLong(starts[i]);
+        out.writeLong(ends[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of records, the children of the root element.
+   */
+  int size() {
+    return starts.length;
+  }
+
+  /**
+   * Returns the byte offset in the file of the start tag of the given record.
+   */
+  long getStart(int record) {
+    checkRecord(record);
+    return starts[record];
+  }
+
+  /**
+   * Returns the byte offset in the file after the end tag of the given record.
+   */
+  long getEnd(int record) {
+    checkRecord(record);
+    return ends[record];
+  }
+
+  /**
+   * Parses only the given record of the file, as a document of its own.
+   *
+   * @param file the indexed file
+   * @param record the number of the record, starting at 0
+   * @param parser the parser to give the characters of the record to
+   * @return the parser after handling all of the characters of the record
+   * @throws IOException if the file cannot be read
+   * @throws InvalidXMLException if the record is invalid, e.g. because the file changed
+   */
+  XMLParser readRecord(Path file, int record, AbstractXMLParser parser)
+      throws IOException, InvalidXMLException {
+    checkRecord(record);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+          starts[record], ends[record] - starts[record]);
+      return parser.input(StandardCharsets.UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT)
+          .decode(bytes));
+    }
+  }
+
+  private void checkRecord(int record) {
+    if (record < 0 || record >= starts.length) {
+      throw new IndexOutOfBoundsException("Invalid record: " + record);
+    }
+  }
+
+  private static int getUtf8Length(char c) {
+    if (c < 0x80) {
+      return 1;
+    } else if (c < 0x800 || Character.isSurrogate(c)) {
+      // Each half of a surrogate pair counts for half of its 4 bytes
+      return 2;
+    } else {
+      return 3;
+    }
+  }
+
+  /**
+   * Collects the offsets of the records from the events of the validation.
+   */
+  private static final class RecordCollector implements XMLEventHandler {
+    private long offset;
+    private long tagStart;
+    private int depth;
+    private int count;
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private long[] ends = new long[INITIAL_CAPACITY];
+
+    @Override
+    public void startTag(String tagName) {
+      depth++;
+      if (depth == 2) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+          ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = tagStart;
+      }
+    }
+
+    @Override
+    public void endTag(String tagName) {
+      if (depth == 2) {
+        ends[count++] = offset;
+      }
+      depth--;
+    }
+
+    @Override
+    public void characters(String characters) {
+      // Only tags delimit records
+    }
+  }
+}
@@ -1,29 +1,31 @@
 class XMLString implements XMLElementComponent {
 
-  private String currentString;
+  // Copies of a string share its characters: a string is the first length characters of the
+  // builder, and only the copy whose string is the whole builder appends to it in place
+  private StringBuilder chars;
+  private int length;
   private boolean isCompleted = false;
 
   XMLString() {
-    currentString = "";
+    chars = new StringBuilder();
   }
 
   XMLString(XMLString xmlString) {
-    currentString = xmlString.currentString;
+    chars = xmlString.chars;
+    length = xmlString.length;
     isCompleted = xmlString.isCompleted;
+    XMLParserMetrics.recordComponentCopy();
   }
 
   String getString() {
-    return currentString;
-  }
-
-  @Override
-  public XMLString createCopy() {
-    return new XMLString(this);
+    synchronized (chars) {
+      return chars.substring(0, length);
+    }
   }
 
   @Override
   public boolean isStarted() {
-    return currentString.length() != 0;
+    return length != 0;
   }
 
   @Override
@@ -39,11 +41,26 @@ class XMLString implements XMLElementComponent {
     if (isStartTagSpecialCharacter(c)) {
       isCompleted = true;
     }  else {
-      currentString = currentString + c;
+      append(c);
+      XMLParserMetrics.recordTextCharacter();
+    }
+  }
+
+  private void append(char c) {
+    synchronized (chars) {
+      if (chars.length() != length) {
+        // Another copy already appended its own characters after ours
+        StringBuilder sharedChars = chars;
+        chars = new StringBuilder(length * 2);
+        chars.append(sharedChars, 0, length);
+        XMLParserMetrics.recordStringAllocation(length);
+      }
+      chars.append(c);
     }
+    length++;
   }
 
-  private static boolean isInvalidCharacter(char c) {
+  static boolean isInvalidCharacter(char c) {
     return c == '>';
   }
 
@@ -6,6 +6,7 @@ class XMLTag implements XMLElementComponent {
   XMLTag(XMLTag xmlTag) {
     currentTagString = xmlTag.currentTagString;
     isComplete = xmlTag.isComplete;
+    XMLParserMetrics.recordComponentCopy();
   }
 
   XMLTag() {
@@ -43,9 +44,8 @@ class XMLTag implements XMLElementComponent {
     currentTagString = "" + startChar;
   }
 
-  @Override
-  public XMLTag createCopy() {
-    return new XMLTag(this);
+  boolean hasSameState(XMLTag other) {
+    return isComplete == other.isComplete && currentTagString.equals(other.currentTagString);
   }
 
   boolean isStartTag() {
@@ -70,6 +70,7 @@ class XMLTag implements XMLElementComponent {
 
   @Override
   public void processChar(char c) throws InvalidXMLException {
+    XMLParserMetrics.recordStringAllocation(currentTagString.length() + 1);
     if (!isStarted()) {
       start(c);
     } else if (isEndFirstSpecialCharacter(c)) {
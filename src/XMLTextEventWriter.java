@@ -0,0 +1,36 @@
+import java.io.IOException;
+
+/**
+ * Writes events as the lines of text returned by XMLInfoLogger.
+ */
+final class XMLTextEventWriter implements XMLEventHandler {
+
+  private static final String START_TAG_STRING = "Started:";
+  private static final String END_TAG_STRING = "Ended:";
+  private static final String CHARACTERS_STRING = "Characters:";
+
+  private final Appendable out;
+
+  XMLTextEventWriter(Appendable out) {
+    this.out = out;
+  }
+
+  @Override
+  public void startTag(String tagName) throws IOException {
+    appendLine(START_TAG_STRING, tagName);
+  }
+
+  @Override
+  public void endTag(String tagName) throws IOException {
+    appendLine(END_TAG_STRING, tagName);
+  }
+
+  @Override
+  public void characters(String characters) throws IOException {
+    appendLine(CHARACTERS_STRING, characters);
+  }
+
+  private void appendLine(String prefix, String value) throws IOException {
+    out.append(prefix).append(value).append('\n');
+  }
+}
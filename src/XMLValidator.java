@@ -1,3 +1,7 @@
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 public final class XMLValidator extends AbstractXMLParser {
 
   private static final String EMPTY_STATUS = "Status:Empty";
@@ -6,7 +10,26 @@ public final class XMLValidator extends AbstractXMLParser {
 
 
   XMLValidator() {
-    super(new XMLElement());
+    this(Collections.<String>emptySet());
+  }
+
+  /**
+   * Creates a parser that does not keep the content of the elements with the given tag names.
+   * Those elements are still checked to have balanced tags, but their children and text are
+   * discarded while parsing.
+   */
+  XMLValidator(Set<String> skippedTagNames) {
+    super(new XMLElement(Collections.unmodifiableSet(new HashSet<>(skippedTagNames)), false));
+  }
+
+  /**
+   * Creates a validator that also sends the events of the document to the given handler as
+   * soon as they are validated, in the order XMLInfoLogger would log them. The handler is
+   * shared by the validators returned by input, so it should only be used with one sequence of
+   * inputs.
+   */
+  XMLValidator(XMLEventHandler eventHandler) {
+    super(new XMLElement(Collections.<String>emptySet(), false, eventHandler));
   }
 
   XMLValidator(XMLElement rootElement) {
@@ -20,14 +43,18 @@ public final class XMLValidator extends AbstractXMLParser {
 
   @Override
   public String output() {
+    long outputStart = XMLParserMetrics.startTimer();
+    String status;
     if (!rootElement.isStarted()) {
-      return EMPTY_STATUS;
+      status = EMPTY_STATUS;
     } else {
       if (rootElement.isCompleted()) {
-        return VALID_STATUS;
+        status = VALID_STATUS;
       } else {
-        return INCOMPLETE_STATUS;
+        status = INCOMPLETE_STATUS;
       }
     }
+    XMLParserMetrics.recordOutput(outputStart);
+    return status;
   }
 }
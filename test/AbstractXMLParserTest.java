@@ -1,13 +1,32 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 public abstract class AbstractXMLParserTest {
 
   private XMLParser xmlParser;
   protected abstract XMLParser createXMLParser();
+  protected abstract XMLParser createXMLParser(Set<String> skippedTagNames);
 
 
   public static final class XMLValidatorTest extends AbstractXMLParserTest {
@@ -15,6 +34,11 @@ public abstract class AbstractXMLParserTest {
     protected XMLParser createXMLParser() {
       return new XMLValidator();
     }
+
+    @Override
+    protected XMLParser createXMLParser(Set<String> skippedTagNames) {
+      return new XMLValidator(skippedTagNames);
+    }
   }
 
   public static final class XMLInfoLoggerTest extends AbstractXMLParserTest {
@@ -22,6 +46,11 @@ public abstract class AbstractXMLParserTest {
     protected XMLParser createXMLParser() {
       return new XMLInfoLogger();
     }
+
+    @Override
+    protected XMLParser createXMLParser(Set<String> skippedTagNames) {
+      return new XMLInfoLogger(skippedTagNames);
+    }
   }
 
   @Before
@@ -30,7 +59,11 @@ public abstract class AbstractXMLParserTest {
   }
 
   private XMLParser enterXMLInput(String xml) throws InvalidXMLException {
-    XMLParser returnXMLParser = xmlParser;
+    return enterXMLInput(xmlParser, xml);
+  }
+
+  private XMLParser enterXMLInput(XMLParser parser, String xml) throws InvalidXMLException {
+    XMLParser returnXMLParser = parser;
     for(int i = 0, n = xml.length() ; i < n ; i++) {
       char c = xml.charAt(i);
       returnXMLParser = returnXMLParser.input(c);
@@ -58,6 +91,11 @@ public abstract class AbstractXMLParserTest {
    enterXMLInput("<root> text </t");
   }
 
+  @Test(expected = InvalidXMLException.class)
+  public void testEndTagLongerThanStartTag() throws InvalidXMLException {
+    enterXMLInput("<root> text </roots");
+  }
+
   @Test(expected = InvalidXMLException.class)
   public void testInvalidCharacterInString() throws InvalidXMLException { 
     enterXMLInput("<root> te>");
@@ -388,6 +426,241 @@ public abstract class AbstractXMLParserTest {
             + "\n");
   }
 
+  private XMLParser createSkippingXMLParser(String... skippedTagNames) {
+    return createXMLParser(new HashSet<>(Arrays.asList(skippedTagNames)));
+  }
+
+  @Test()
+  public void testSkippedElement() throws InvalidXMLException {
+    XMLParser resultParser = enterXMLInput(createSkippingXMLParser("skip"),
+        "<root>a<skip>b<c>d</c><skip></skip></skip><tag>e</tag></root>");
+    assertOutputValidatorAndLogger(resultParser,"Status:Valid",
+        "Started:root"
+            + "\nCharacters:a"
+            + "\nStarted:skip"
+            + "\nEnded:skip"
+            + "\nStarted:tag"
+            + "\nCharacters:e"
+            + "\nEnded:tag"
+            + "\nEnded:root"
+            + "\n");
+  }
+
+  @Test()
+  public void testIncompleteSkippedElement() throws InvalidXMLException {
+    XMLParser resultParser = enterXMLInput(createSkippingXMLParser("skip"),
+        "<root><skip>b<c>d</c");
+    assertOutputValidatorAndLogger(resultParser,"Status:Incomplete",
+        "Started:root"
+            + "\nStarted:skip"
+            + "\n");
+  }
+
+  @Test(expected = InvalidXMLException.class)
+  public void testUnbalancedSkippedElement() throws InvalidXMLException {
+    enterXMLInput(createSkippingXMLParser("skip"), "<root><skip><c></skip></r");
+  }
+
+  @Test(expected = InvalidXMLException.class)
+  public void testMismatchedNestedTagInSkippedElement() throws InvalidXMLException {
+    enterXMLInput(createSkippingXMLParser("skip"), "<root><skip><c></d></skip></root>");
+  }
+
+  @Test(expected = InvalidXMLException.class)
+  public void testSkippedElementClosingNestedTag() throws InvalidXMLException {
+    enterXMLInput(createSkippingXMLParser("skip"), "<root><skip><c></skip></skip></root>");
+  }
+
+  @Test(expected = InvalidXMLException.class)
+  public void testNestedTagClosedByLongerNameInSkippedElement() throws InvalidXMLException {
+    enterXMLInput(createSkippingXMLParser("skip"), "<root><skip><c><d></dd></c></skip></root>");
+  }
+
+  @Test()
+  public void testNestedTagsWithSkippedNameInSkippedElement() throws InvalidXMLException {
+    XMLParser resultParser = enterXMLInput(createSkippingXMLParser("skip"),
+        "<root><skip><c><skip>a</skip></c><c></c></skip></root>");
+    assertOutputValidatorAndLogger(resultParser,"Status:Valid",
+        "Started:root"
+            + "\nStarted:skip"
+            + "\nEnded:skip"
+            + "\nEnded:root"
+            + "\n");
+  }
+
+  @Test(expected = InvalidXMLException.class)
+  public void testInvalidCharacterInSkippedElement() throws InvalidXMLException {
+    enterXMLInput(createSkippingXMLParser("skip"), "<root><skip>a>");
+  }
+
+  @Test()
+  public void testCachedOutput() throws InvalidXMLException {
+    XMLParserCache cache = new XMLParserCache(() -> (AbstractXMLParser) createXMLParser(), 1000);
+    String xml = "<root>txt<tag></tag></root>";
+    String expected = enterXMLInput(xml).output();
+    assertEquals(expected, cache.output(xml));
+    assertEquals(expected, cache.output(new StringBuilder(xml)));
+    assertEquals(expected, cache.parse(xml).output());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(2, cache.getHitCount());
+  }
+
+  @Test()
+  public void testCacheEviction() throws InvalidXMLException {
+    String first = "<root>first text in the cache</root>";
+    String second = "<root>second text in the cache</root>";
+    // Room for any one of the documents, but not both
+    long maxWeight = Math.max(first.length() + enterXMLInput(first).output().length(),
+        second.length() + enterXMLInput(second).output().length());
+    XMLParserCache cache = new XMLParserCache(() -> (AbstractXMLParser) createXMLParser(), maxWeight);
+    cache.output(first);
+    cache.output(second);
+    cache.output(first);
+    assertEquals(3, cache.getMissCount());
+    assertEquals(1, cache.size());
+  }
+
+  @Test()
+  public void testCachedInvalidDocument() {
+    XMLParserCache cache = new XMLParserCache(() -> (AbstractXMLParser) createXMLParser(), 1000);
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.output("<root>a></root>");
+        throw new AssertionError("Invalid document was parsed");
+      } catch (InvalidXMLException e) {
+        // Expected, from the cache the second time
+      }
+    }
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test()
+  public void testCacheHashCollision() throws InvalidXMLException {
+    // Every document has the same hash
+    XMLParserCache cache = new XMLParserCache(() -> (AbstractXMLParser) createXMLParser(), 1000,
+        document -> 0);
+    String valid = "<root>abc</root>";
+    String invalid = "<root>a>c</root>";
+    assertEquals(enterXMLInput(valid).output(), cache.output(valid));
+    try {
+      cache.output(invalid);
+      throw new AssertionError("Invalid document was parsed");
+    } catch (InvalidXMLException e) {
+      // Expected, the entry of the valid document does not match
+    }
+    assertEquals(enterXMLInput(valid).output(), cache.output(new StringBuilder(valid)));
+    assertEquals(2, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test()
+  public void testDocumentStream() throws Exception {
+    List<CompletableFuture<String>> documents = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      XMLDocumentStream stream = new XMLDocumentStream(
+          () -> (AbstractXMLParser) createXMLParser(), executor, documents::add);
+      stream.input("<a>x</a> \n<b><c>y</c></b><d>>z</d><e>");
+      stream.finish();
+
+      assertEquals(4, documents.size());
+      assertEquals(enterXMLInput("<a>x</a>").output(), documents.get(0).get());
+      assertEquals(enterXMLInput("<b><c>y</c></b>").output(), documents.get(1).get());
+      try {
+        documents.get(2).get();
+        throw new AssertionError("Invalid document was parsed");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof InvalidXMLException);
+      }
+      assertEquals(enterXMLInput("<e>").output(), documents.get(3).get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test()
+  public void testDocumentStreamAfterInvalidDocument() throws Exception {
+    List<CompletableFuture<String>> documents = new ArrayList<>();
+    XMLDocumentStream stream = new XMLDocumentStream(
+        () -> (AbstractXMLParser) createXMLParser(), documents::add);
+    stream.input("<a><b></a><c></c> <d>t</d><<e></e>");
+    stream.finish();
+
+    assertEquals(5, documents.size());
+    for (int i : new int[] {0, 3}) {
+      try {
+        documents.get(i).get();
+        throw new AssertionError("Invalid document was parsed");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof InvalidXMLException);
+      }
+    }
+    assertEquals(enterXMLInput("<c></c>").output(), documents.get(1).get());
+    assertEquals(enterXMLInput("<d>t</d>").output(), documents.get(2).get());
+    assertEquals(enterXMLInput("<e></e>").output(), documents.get(4).get());
+  }
+
+  private static byte[] gzip(String text) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+    return bytes.toByteArray();
+  }
+
+  @Test()
+  public void testParsingPipeline() throws InvalidXMLException, IOException {
+    StringBuilder xml = new StringBuilder("<root>");
+    for (int i = 0; i < 200; i++) {
+      xml.append("<item>\u00e9l\u00e9ment ").append(i).append("\u20ac</item>");
+    }
+    xml.append("</root>");
+    // Small buffers, so that characters are split between buffers
+    XMLParsingPipeline pipeline = new XMLParsingPipeline(7, 2);
+    XMLParser resultParser = pipeline.parse((AbstractXMLParser) createXMLParser(),
+        new GZIPInputStream(new ByteArrayInputStream(gzip(xml.toString()))),
+        StandardCharsets.UTF_8);
+    assertEquals(enterXMLInput(xml.toString()).output(), resultParser.output());
+  }
+
+  @Test(expected = InvalidXMLException.class)
+  public void testParsingPipelineInvalidInput() throws InvalidXMLException, IOException {
+    new XMLParsingPipeline(4, 2).parse((AbstractXMLParser) createXMLParser(),
+        new ByteArrayInputStream("<root>text<a></b></root>".getBytes(StandardCharsets.UTF_8)),
+        StandardCharsets.UTF_8);
+  }
+
+  @Test()
+  public void testRecordIndex() throws InvalidXMLException, IOException {
+    List<String> records = new ArrayList<>();
+    StringBuilder xml = new StringBuilder("<records>\n");
+    for (int i = 0; i < 50; i++) {
+      String record = "<record>\u00e9\ud83d\ude00" + i + "<field>\u20ac</field></record>";
+      records.add(record);
+      xml.append(record).append(" text\n");
+    }
+    xml.append("</records>");
+    Path file = Files.createTempFile("records", ".xml");
+    Path indexFile = XMLRecordIndex.getIndexFile(file);
+    try {
+      Files.write(file, xml.toString().getBytes(StandardCharsets.UTF_8));
+      XMLRecordIndex builtIndex = XMLRecordIndex.loadOrBuild(file);
+      assertTrue(Files.exists(indexFile));
+      XMLRecordIndex loadedIndex = XMLRecordIndex.loadOrBuild(file);
+      assertEquals(records.size(), loadedIndex.size());
+      for (int i : new int[] {0, 17, 49}) {
+        assertEquals(builtIndex.getStart(i), loadedIndex.getStart(i));
+        XMLParser recordParser = loadedIndex.readRecord(file, i,
+            (AbstractXMLParser) createXMLParser());
+        assertEquals(enterXMLInput(records.get(i)).output(), recordParser.output());
+      }
+    } finally {
+      Files.deleteIfExists(indexFile);
+      Files.deleteIfExists(file);
+    }
+  }
+
   @Test
   public void TestLongInput() throws InvalidXMLException {
     enterXMLInput("<a><a><a><a><a><a><a><a><a><a><a><a><a><a><a><a><a><a>"+
@@ -0,0 +1,145 @@
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class IncrementalXMLValidatorTest {
+
+  private static final String[] FRAGMENTS = {
+      "<a>", "</a>", "<b>", "</b>", "<a>text</a>", "<b><a></a></b>", "text", " ", "<", ">",
+      "</"};
+
+  /**
+   * Returns the output of a new validator fed the whole document, or the message of the error
+   * if the document is invalid.
+   */
+  private static String validate(String document) {
+    try {
+      return new XMLValidator().input(document).output();
+    } catch (InvalidXMLException e) {
+      return "Invalid: " + e.getMessage();
+    }
+  }
+
+  private static String validate(IncrementalXMLValidator validator) {
+    try {
+      return validator.output();
+    } catch (InvalidXMLException e) {
+      return "Invalid: " + e.getMessage();
+    }
+  }
+
+  private static void assertSameAsFreshValidation(IncrementalXMLValidator validator) {
+    assertEquals(validator.getDocument(), validate(validator.getDocument()), validate(validator));
+  }
+
+  @Test()
+  public void testEdits() {
+    IncrementalXMLValidator validator = new IncrementalXMLValidator(4);
+    validator.insert(0, "<root><a>x</a></root>");
+    assertEquals("Status:Valid", validate(validator));
+    validator.insert(14, "<b>y</b>");
+    assertEquals("<root><a>x</a><b>y</b></root>", validator.getDocument());
+    assertSameAsFreshValidation(validator);
+    validator.delete(6, 8);
+    assertEquals("<root><b>y</b></root>", validator.getDocument());
+    assertSameAsFreshValidation(validator);
+    validator.replace(7, 1, "c");
+    assertEquals("<root><c>y</b></root>", validator.getDocument());
+    assertSameAsFreshValidation(validator);
+    validator.replace(7, 1, "b");
+    validator.delete(14, 7);
+    assertEquals("<root><b>y</b>", validator.getDocument());
+    assertEquals("Status:Incomplete", validate(validator));
+    assertSameAsFreshValidation(validator);
+  }
+
+  @Test()
+  public void testInvalidThenValidAgain() {
+    IncrementalXMLValidator validator = new IncrementalXMLValidator(3);
+    validator.insert(0, "<root><a>text</a></root>");
+    assertEquals("Status:Valid", validate(validator));
+    validator.insert(11, ">");
+    assertTrue(validate(validator).startsWith("Invalid: "));
+    assertSameAsFreshValidation(validator);
+    validator.delete(11, 1);
+    assertEquals("Status:Valid", validate(validator));
+    assertSameAsFreshValidation(validator);
+  }
+
+  @Test()
+  public void testEditRevalidatesAroundTheEdit() {
+    int checkpointInterval = 64;
+    IncrementalXMLValidator validator = new IncrementalXMLValidator(checkpointInterval);
+    StringBuilder document = new StringBuilder("<root>");
+    for (int i = 0; i < 2000; i++) {
+      document.append("<record>value</record>");
+    }
+    document.append("</root>");
+    validator.insert(0, document);
+    assertEquals(document.length(), validator.getLastRevalidatedLength());
+
+    int offset = document.indexOf("value", document.length() / 2);
+    validator.replace(offset, 5, "other value");
+    assertEquals("Status:Valid", validate(validator));
+    // Once past the edit, the validation converges with the previous one at a checkpoint
+    assertTrue(validator.getLastRevalidatedLength() <= 2 * checkpointInterval + 11);
+
+    validator.delete(offset, 11);
+    assertEquals("Status:Valid", validate(validator));
+    assertTrue(validator.getLastRevalidatedLength() <= 2 * checkpointInterval);
+  }
+
+  @Test()
+  public void testDeepDocument() {
+    int depth = 20000;
+    StringBuilder document = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      document.append("<e>");
+    }
+    document.append("x");
+    for (int i = 0; i < depth; i++) {
+      document.append("</e>");
+    }
+    IncrementalXMLValidator validator = new IncrementalXMLValidator(64);
+    validator.insert(0, document);
+    assertEquals("Status:Valid", validate(validator));
+    validator.replace(document.indexOf("x"), 1, "yy");
+    assertEquals("Status:Valid", validate(validator));
+    // The checkpoints around the middle are about as far apart as the depth there
+    assertTrue(validator.getLastRevalidatedLength() <= 2 * depth + 2);
+    validator.replace(document.indexOf("x"), 2, "</e>");
+    assertSameAsFreshValidation(validator);
+  }
+
+  @Test()
+  public void testRandomEdits() {
+    Random random = new Random(42);
+    for (int checkpointInterval : new int[] {1, 3, 16}) {
+      IncrementalXMLValidator validator = new IncrementalXMLValidator(checkpointInterval);
+      validator.insert(0, "<root></root>");
+      for (int i = 0; i < 3000; i++) {
+        int length = validator.length();
+        int offset = random.nextInt(length + 1);
+        // Most edits are at the start of a tag, where they can keep the document valid
+        int tagStart = validator.getDocument().indexOf('<', offset);
+        if (tagStart != -1 && random.nextInt(4) != 0) {
+          offset = tagStart;
+        }
+        int removedLength = length > 300 || random.nextInt(3) == 0
+            ? random.nextInt(Math.min(length - offset, 8) + 1) : 0;
+        String inserted = length > 300 ? "" : FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+        String removed = validator.getDocument().substring(offset, offset + removedLength);
+        validator.replace(offset, removedLength, inserted);
+        assertSameAsFreshValidation(validator);
+        // Edits that make the document invalid are undone, which has to make it valid again
+        if (validate(validator).startsWith("Invalid: ")) {
+          validator.replace(offset, inserted.length(), removed);
+          assertSameAsFreshValidation(validator);
+        }
+      }
+    }
+  }
+}
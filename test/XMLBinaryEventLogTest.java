@@ -0,0 +1,51 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class XMLBinaryEventLogTest {
+
+  private static String replay(byte[] log) throws IOException {
+    StringBuilder replayed = new StringBuilder();
+    new XMLBinaryEventReader(new ByteArrayInputStream(log))
+        .replay(new XMLTextEventWriter(replayed));
+    return replayed.toString();
+  }
+
+  @Test()
+  public void testBinaryOutputReplay() throws InvalidXMLException, IOException {
+    XMLInfoLogger logger =
+        (XMLInfoLogger) new XMLInfoLogger().input("<root>txt<tag>\u00e9</tag><tag>b</tag><a>");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    logger.writeBinaryOutput(bytes);
+    assertEquals(logger.output(), replay(bytes.toByteArray()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testBinaryReaderInvalidHeader() throws IOException {
+    new XMLBinaryEventReader(new ByteArrayInputStream("Started:root".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testBinaryReaderTruncatedLog() throws InvalidXMLException, IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ((XMLInfoLogger) new XMLInfoLogger().input("<root>some text<tag>")).writeBinaryOutput(bytes);
+    replay(Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3));
+  }
+
+  @Test(expected = IOException.class)
+  public void testBinaryReaderCorruptLength() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(XMLBinaryEventWriter.MAGIC);
+    bytes.write(XMLBinaryEventWriter.VERSION);
+    bytes.write(XMLBinaryEventWriter.DEFINE_TAG);
+    // A name of almost 2 GB, followed by only a few bytes
+    bytes.write(new byte[] {(byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a', 'b'});
+    replay(bytes.toByteArray());
+  }
+}
@@ -0,0 +1,40 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class XMLElementIndexTest {
+
+  @Test()
+  public void testElementIndex() throws InvalidXMLException {
+    XMLElementIndex index = new XMLElementIndex();
+    ((AbstractXMLParser) new XMLValidator(index)).input(
+        "<root><a><b>x</b><c></c></a><b><a><b></b></a></b><a><b></b></a></root>");
+    // Positions: 0 root, 1 a, 2 b, 3 c, 4 b, 5 a, 6 b, 7 a, 8 b
+    assertEquals(9, index.size());
+    assertArrayEquals(new int[] {1, 5, 7}, index.getPositions("a"));
+    assertArrayEquals(new int[0], index.getPositions("d"));
+    assertArrayEquals(new int[] {2, 8}, index.getPositionsAtPath("root", "a", "b"));
+    assertArrayEquals(new int[] {1, 2, 3, 7, 8}, index.getPositionsUnder("root", "a"));
+    assertEquals(5, index.getParent(6));
+    assertEquals(-1, index.getParent(0));
+    assertEquals("c", index.getTagName(3));
+  }
+
+  @Test()
+  public void testPathsWithRepeatedTagNames() throws InvalidXMLException {
+    XMLElementIndex index = new XMLElementIndex();
+    ((AbstractXMLParser) new XMLValidator(index)).input(
+        "<a><a><b></b><a></a></a><b><a></a></b></a>");
+    // Positions: 0 a, 1 a, 2 b, 3 a, 4 b, 5 a
+    assertArrayEquals(new int[] {0}, index.getPositionsAtPath("a"));
+    assertArrayEquals(new int[] {1}, index.getPositionsAtPath("a", "a"));
+    assertArrayEquals(new int[] {3}, index.getPositionsAtPath("a", "a", "a"));
+    assertArrayEquals(new int[] {5}, index.getPositionsAtPath("a", "b", "a"));
+    assertArrayEquals(new int[0], index.getPositionsAtPath("a", "a", "a", "a"));
+    assertArrayEquals(new int[0], index.getPositionsAtPath("b"));
+    assertArrayEquals(new int[0], index.getPositionsAtPath());
+    assertArrayEquals(new int[] {1, 2, 3}, index.getPositionsUnder("a", "a"));
+  }
+}
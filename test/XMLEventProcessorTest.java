@@ -0,0 +1,88 @@
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class XMLEventProcessorTest {
+
+  /**
+   * Publishes the given chunks to a new XMLEventProcessor, requesting one line at a time.
+   *
+   * @return the concatenation of the published lines
+   */
+  private static CompletableFuture<String> publishToEventProcessor(Buffer... chunks) {
+    XMLEventProcessor processor = new XMLEventProcessor(StandardCharsets.UTF_8);
+    CompletableFuture<String> result = new CompletableFuture<>();
+    processor.subscribe(new Flow.Subscriber<String>() {
+      private final StringBuilder lines = new StringBuilder();
+      private Flow.Subscription subscription;
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(String line) {
+        lines.append(line);
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        result.complete(lines.toString());
+      }
+    });
+    try (SubmissionPublisher<Buffer> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(processor);
+      for (Buffer chunk : chunks) {
+        publisher.submit(chunk);
+      }
+    }
+    return result;
+  }
+
+  @Test()
+  public void testEventProcessor() throws Exception {
+    String xml = "<root>txt<tag>\u00e9t\u00e9</tag><a>b";
+    XMLParser logger = new XMLInfoLogger();
+    for (int i = 0, n = xml.length(); i < n; i++) {
+      logger = logger.input(xml.charAt(i));
+    }
+    byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+    // Split in the middle of the two bytes of the first accented character
+    int split = xml.indexOf('\u00e9') + 1;
+    CompletableFuture<String> lines = publishToEventProcessor(
+        ByteBuffer.wrap(bytes, 0, split),
+        ByteBuffer.wrap(bytes, split, bytes.length - split));
+    assertEquals(logger.output(), lines.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test()
+  public void testEventProcessorInvalidInput() throws Exception {
+    CompletableFuture<String> lines = publishToEventProcessor(
+        CharBuffer.wrap("<root>a"), CharBuffer.wrap("></root>"));
+    try {
+      lines.get(10, TimeUnit.SECONDS);
+      throw new AssertionError("Invalid input was published");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof InvalidXMLException);
+    }
+  }
+}
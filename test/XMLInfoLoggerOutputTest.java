@@ -0,0 +1,39 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class XMLInfoLoggerOutputTest {
+
+  @Test()
+  public void testWriteOutputToAppendable() throws InvalidXMLException, IOException {
+    XMLInfoLogger logger =
+        (XMLInfoLogger) new XMLInfoLogger().input("<root>txt<tag>b</tag></root>");
+    StringBuilder output = new StringBuilder();
+    logger.writeOutput(output);
+    assertEquals(logger.output(), output.toString());
+  }
+
+  @Test()
+  public void testWriteOutputToWriter() throws InvalidXMLException, IOException {
+    XMLInfoLogger logger =
+        (XMLInfoLogger) new XMLInfoLogger().input("<root>txt<tag>\u00e9t\u00e9</tag><a");
+    StringWriter writer = new StringWriter();
+    logger.writeOutput(writer);
+    assertEquals(logger.output(), writer.toString());
+  }
+
+  @Test()
+  public void testWriteOutputToChannel() throws InvalidXMLException, IOException {
+    XMLInfoLogger logger =
+        (XMLInfoLogger) new XMLInfoLogger().input("<root>txt<tag>\u00e9t\u00e9</tag><a");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    logger.writeOutput(Channels.newChannel(bytes));
+    assertEquals(logger.output(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+}
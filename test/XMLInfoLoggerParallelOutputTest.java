@@ -0,0 +1,68 @@
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class XMLInfoLoggerParallelOutputTest {
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void shutdownPool() {
+    pool.shutdown();
+  }
+
+  private void assertSameOutput(CharSequence xml) throws InvalidXMLException {
+    XMLInfoLogger logger = (XMLInfoLogger) new XMLInfoLogger().input(xml);
+    assertEquals(logger.output(), logger.output(pool));
+  }
+
+  @Test()
+  public void testManyRecords() throws InvalidXMLException {
+    StringBuilder xml = new StringBuilder("<root>text");
+    for (int i = 0; i < 300; i++) {
+      xml.append("<record>").append(i);
+      for (int j = 0; j < i % 150; j++) {
+        xml.append("<field>").append(j).append("</field>");
+      }
+      xml.append("</record>tail");
+    }
+    xml.append("</root>");
+    assertSameOutput(xml);
+  }
+
+  @Test()
+  public void testFewLargeRecords() throws InvalidXMLException {
+    StringBuilder xml = new StringBuilder("<root>");
+    for (int i = 0; i < 30; i++) {
+      xml.append("<record>").append(i);
+      for (int j = 0; j < 2000; j++) {
+        xml.append("<field>").append(j).append("<value>v</value></field>");
+      }
+      xml.append("</record>");
+    }
+    xml.append("</root>");
+    assertSameOutput(xml);
+  }
+
+  @Test()
+  public void testDeepDocument() throws InvalidXMLException {
+    int depth = 20000;
+    StringBuilder xml = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      xml.append("<e>").append(i % 10);
+    }
+    for (int i = 0; i < depth; i++) {
+      xml.append("</e>").append(i % 10);
+    }
+    xml.setLength(xml.length() - 1);
+    assertSameOutput(xml);
+  }
+
+  @Test()
+  public void testIncompleteDocument() throws InvalidXMLException {
+    assertSameOutput("<root><a>b<c>");
+  }
+}
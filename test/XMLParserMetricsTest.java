@@ -0,0 +1,95 @@
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Checks the parser metrics. They are only recorded when the "xmlparser.metrics" system property
+ * is true when XMLParserMetrics is loaded, so unless this JVM was started with it, the checks run
+ * in a new JVM started with it, through {@link #main(String[])}.
+ */
+public class XMLParserMetricsTest {
+
+  private static final String XML = "<root>ab<c>d</c></root>";
+
+  @Test()
+  public void testMetrics() throws Exception {
+    if (XMLParserMetrics.ENABLED) {
+      checkMetrics();
+      return;
+    }
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+        + "java";
+    Process process = new ProcessBuilder(java, "-Dxmlparser.metrics=true",
+        "-cp", System.getProperty("java.class.path"), XMLParserMetricsTest.class.getName())
+        .redirectErrorStream(true)
+        .start();
+    String output = new String(process.getInputStream().readAllBytes(), Charset.defaultCharset());
+    assertEquals(output, 0, process.waitFor());
+  }
+
+  /**
+   * Runs the checks in a JVM started with metrics enabled, exiting with an error if any fails.
+   */
+  public static void main(String[] args) throws Exception {
+    if (!XMLParserMetrics.ENABLED) {
+      throw new IllegalStateException("Metrics are not enabled");
+    }
+    checkMetrics();
+  }
+
+  private static void checkMetrics() throws Exception {
+    XMLParserMetrics.resetAll();
+    XMLParser parser = new XMLValidator();
+    for (int i = 0; i < XML.length(); i++) {
+      parser = parser.input(XML.charAt(i));
+    }
+    assertEquals("Status:Valid", parser.output());
+
+    XMLParserMetricsSnapshot snapshot = XMLParserMetrics.snapshot();
+    assertEquals(4, snapshot.getTagsProcessed());
+    assertEquals(3, snapshot.getTextCharacters());
+    assertEquals(2, snapshot.getMaxDepth());
+    assertEquals(XML.length(), snapshot.getInputCopies());
+    // Every input copies at least the root, and at most the open elements with their tag and
+    // string; completed components are shared
+    assertTrue(snapshot.getComponentsCopied() >= XML.length());
+    assertTrue(snapshot.getComponentsCopied() <= XML.length() * 6);
+    assertTrue(snapshot.getEstimatedAllocatedBytes() > 0);
+    assertTrue(snapshot.getOutputNanos() > 0);
+
+    XMLParserMetricsEvent event = new XMLParserMetricsEvent();
+    event.set(snapshot);
+    assertEquals(snapshot.getTagsProcessed(), event.tagsProcessed);
+    assertEquals(snapshot.getComponentsCopied(), event.componentsCopied);
+    boolean isEventRegistered = false;
+    for (EventType eventType : FlightRecorder.getFlightRecorder().getEventTypes()) {
+      isEventRegistered |= eventType.getName().equals("xmlparser.Metrics");
+    }
+    assertTrue(isEventRegistered);
+
+    XMLParserMetrics.registerMBean();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("XMLParser:type=Metrics");
+    assertEquals(4L, server.getAttribute(name, "TagsProcessed"));
+    server.invoke(name, "reset", null, null);
+    snapshot = XMLParserMetrics.snapshot();
+    assertEquals(0, snapshot.getTagsProcessed());
+    assertEquals(0, snapshot.getTextCharacters());
+    assertEquals(0, snapshot.getMaxDepth());
+    assertEquals(0, snapshot.getInputCopies());
+    assertEquals(0, snapshot.getComponentsCopied());
+    assertEquals(0, snapshot.getEstimatedAllocatedBytes());
+    assertEquals(0, snapshot.getCopyNanos());
+    assertEquals(0, snapshot.getProcessNanos());
+    assertEquals(0, snapshot.getOutputNanos());
+  }
+}
@@ -0,0 +1,177 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Feeds generated documents of growing size, depth and text length to both parsers, and checks
+ * that the bytes allocated and the time taken by the parsing thread grow no faster than the
+ * length of the documents, with some slack for measurement noise. Each document is twice as
+ * long as the previous one, so a cost that is quadratic in the length doubles faster than the
+ * bounds allow.
+ *
+ * <p>Documents are fed both one character at a time, with a new parser per character, and all at
+ * once. With one parser per character the open elements are copied for every character, so the
+ * cost per character grows with the depth, and deep documents are only fed all at once.
+ */
+public class XMLParserScalabilityTest {
+
+  private static final int SIZE_STEPS = 4;
+  private static final int BASE_ELEMENT_COUNT = 2000;
+  private static final int BASE_TEXT_LENGTH = 32000;
+  private static final int BASE_DEPTH = 500;
+  private static final double ALLOCATION_SLACK = 1.5;
+  private static final double TIME_SLACK = 4;
+  private static final int RUNS = 5;
+
+  private interface Workload {
+    void run(String xml) throws InvalidXMLException;
+  }
+
+  @Test()
+  public void testDocumentSizeByCharacter() throws InvalidXMLException {
+    assertLinearForBothParsers("size", XMLParserScalabilityTest::generateWideDocument,
+        BASE_ELEMENT_COUNT, XMLParserScalabilityTest::inputByCharacter);
+  }
+
+  @Test()
+  public void testDocumentSizeAtOnce() throws InvalidXMLException {
+    assertLinearForBothParsers("size", XMLParserScalabilityTest::generateWideDocument,
+        BASE_ELEMENT_COUNT, XMLParserScalabilityTest::inputAtOnce);
+  }
+
+  @Test()
+  public void testTextLengthByCharacter() throws InvalidXMLException {
+    assertLinearForBothParsers("text length", XMLParserScalabilityTest::generateLongTextDocument,
+        BASE_TEXT_LENGTH, XMLParserScalabilityTest::inputByCharacter);
+  }
+
+  @Test()
+  public void testTextLengthAtOnce() throws InvalidXMLException {
+    assertLinearForBothParsers("text length", XMLParserScalabilityTest::generateLongTextDocument,
+        BASE_TEXT_LENGTH, XMLParserScalabilityTest::inputAtOnce);
+  }
+
+  @Test()
+  public void testDepthAtOnce() throws InvalidXMLException {
+    assertLinearForBothParsers("depth", XMLParserScalabilityTest::generateDeepDocument,
+        BASE_DEPTH, XMLParserScalabilityTest::inputAtOnce);
+  }
+
+  private static String generateWideDocument(int elementCount) {
+    StringBuilder xml = new StringBuilder("<root>");
+    for (int i = 0; i < elementCount; i++) {
+      xml.append("<item>value ").append(i % 10).append("</item>");
+    }
+    return xml.append("</root>").toString();
+  }
+
+  private static String generateLongTextDocument(int textLength) {
+    StringBuilder xml = new StringBuilder("<root>");
+    for (int i = 0; i < textLength; i++) {
+      xml.append((char) ('a' + i % 26));
+    }
+    return xml.append("</root>").toString();
+  }
+
+  private static String generateDeepDocument(int depth) {
+    StringBuilder xml = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      xml.append("<level>");
+    }
+    xml.append("text");
+    for (int i = 0; i < depth; i++) {
+      xml.append("</level>");
+    }
+    return xml.toString();
+  }
+
+  private static Workload inputByCharacter(Supplier<XMLParser> parserFactory) {
+    return xml -> {
+      XMLParser parser = parserFactory.get();
+      for (int i = 0, n = xml.length(); i < n; i++) {
+        parser = parser.input(xml.charAt(i));
+      }
+      parser.output();
+    };
+  }
+
+  private static Workload inputAtOnce(Supplier<XMLParser> parserFactory) {
+    return xml -> ((AbstractXMLParser) parserFactory.get()).input(xml).output();
+  }
+
+  private static void assertLinearForBothParsers(String dimension,
+      IntFunction<String> generator, int baseSize,
+      Function<Supplier<XMLParser>, Workload> workload)
+      throws InvalidXMLException {
+    String[] documents = new String[SIZE_STEPS];
+    for (int i = 0; i < SIZE_STEPS; i++) {
+      documents[i] = generator.apply(baseSize << i);
+    }
+    assertLinear("XMLValidator " + dimension, documents, workload.apply(XMLValidator::new));
+    assertLinear("XMLInfoLogger " + dimension, documents, workload.apply(XMLInfoLogger::new));
+  }
+
+  /**
+   * Checks every doubling of the document for allocations, so that a quadratic workload fails
+   * before reaching the largest documents, and the smallest and largest documents for time,
+   * which is too noisy to compare between close sizes.
+   */
+  private static void assertLinear(String name, String[] documents, Workload workload)
+      throws InvalidXMLException {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationMXBean =
+        (com.sun.management.ThreadMXBean) threadMXBean;
+    assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported());
+    allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+
+    // The first measurement only warms up the code
+    measure(allocationMXBean, workload, documents[0]);
+    long[] smallestCosts = measure(allocationMXBean, workload, documents[0]);
+    long[] costs = smallestCosts;
+    for (int i = 1; i < documents.length; i++) {
+      long[] previousCosts = costs;
+      costs = measure(allocationMXBean, workload, documents[i]);
+      assertGrowth(name + ": allocated bytes", documents[i - 1], documents[i],
+          previousCosts[0], costs[0], ALLOCATION_SLACK);
+    }
+    assertGrowth(name + ": time", documents[0], documents[documents.length - 1],
+        smallestCosts[1], costs[1], TIME_SLACK);
+  }
+
+  private static void assertGrowth(String cost, String smallerDocument, String largerDocument,
+      long smallerCost, long largerCost, double slack) {
+    double lengthRatio = (double) largerDocument.length() / smallerDocument.length();
+    double costRatio = (double) largerCost / Math.max(smallerCost, 1);
+    assertTrue(cost + " grew " + costRatio + " times for a " + lengthRatio
+        + " times longer document", costRatio <= lengthRatio * slack);
+  }
+
+  /**
+   * Returns the fewest bytes allocated and the shortest time in nanoseconds of RUNS runs of the
+   * workload on the given document.
+   */
+  private static long[] measure(com.sun.management.ThreadMXBean allocationMXBean,
+      Workload workload, String xml) throws InvalidXMLException {
+    long threadId = Thread.currentThread().getId();
+    long fewestBytes = Long.MAX_VALUE;
+    long shortestTime = Long.MAX_VALUE;
+    for (int i = 0; i < RUNS; i++) {
+      long bytesBefore = allocationMXBean.getThreadAllocatedBytes(threadId);
+      long timeBefore = System.nanoTime();
+      workload.run(xml);
+      long time = System.nanoTime() - timeBefore;
+      long bytes = allocationMXBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+      fewestBytes = Math.min(fewestBytes, bytes);
+      shortestTime = Math.min(shortestTime, time);
+    }
+    return new long[] {fewestBytes, shortestTime};
+  }
+}
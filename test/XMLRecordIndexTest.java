@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class XMLRecordIndexTest {
+
+  private static final String XML = "<records><a>1</a><b>2</b><c>3</c></records>";
+
+  /**
+   * Writes the given bytes in place of the index of a file, then checks that loadOrBuild
+   * rebuilds the index and saves it again.
+   */
+  private static void assertRebuilt(byte[] indexBytes) throws InvalidXMLException, IOException {
+    Path file = Files.createTempFile("records", ".xml");
+    Path indexFile = XMLRecordIndex.getIndexFile(file);
+    try {
+      Files.write(file, XML.getBytes(StandardCharsets.UTF_8));
+      Files.write(indexFile, indexBytes);
+      XMLRecordIndex index = XMLRecordIndex.loadOrBuild(file);
+      assertEquals(3, index.size());
+      assertEquals("Status:Valid", index.readRecord(file, 1, new XMLValidator()).output());
+      assertEquals(3, XMLRecordIndex.load(indexFile).size());
+    } finally {
+      Files.deleteIfExists(indexFile);
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static byte[] savedIndex() throws InvalidXMLException, IOException {
+    Path file = Files.createTempFile("records", ".xml");
+    Path indexFile = XMLRecordIndex.getIndexFile(file);
+    try {
+      Files.write(file, XML.getBytes(StandardCharsets.UTF_8));
+      XMLRecordIndex.loadOrBuild(file);
+      return Files.readAllBytes(indexFile);
+    } finally {
+      Files.deleteIfExists(indexFile);
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test()
+  public void testSaveLeavesNoTemporaryFile() throws InvalidXMLException, IOException {
+    Path directory = Files.createTempDirectory("records");
+    Path file = directory.resolve("records.xml");
+    Path indexFile = XMLRecordIndex.getIndexFile(file);
+    try {
+      Files.write(file, XML.getBytes(StandardCharsets.UTF_8));
+      XMLRecordIndex.loadOrBuild(file).save(indexFile);
+      try (Stream<Path> files = Files.list(directory)) {
+        assertEquals(2, files.count());
+      }
+    } finally {
+      Files.deleteIfExists(indexFile);
+      Files.deleteIfExists(file);
+      Files.delete(directory);
+    }
+  }
+
+  @Test()
+  public void testEmptyIndexIsRebuilt() throws InvalidXMLException, IOException {
+    assertRebuilt(new byte[0]);
+  }
+
+  @Test()
+  public void testTruncatedIndexIsRebuilt() throws InvalidXMLException, IOException {
+    byte[] index = savedIndex();
+    assertRebuilt(Arrays.copyOf(index, index.length - 5));
+  }
+
+  @Test()
+  public void testIndexWithWrongMagicNumberIsRebuilt() throws InvalidXMLException, IOException {
+    byte[] index = savedIndex();
+    index[0] ^= 1;
+    assertRebuilt(index);
+  }
+
+  @Test()
+  public void testIndexWithCorruptCountIsRebuilt() throws InvalidXMLException, IOException {
+    byte[] index = savedIndex();
+    // The record count follows the magic number, version, file size and last modified time
+    index[24] = 0x7f;
+    assertRebuilt(index);
+    index[24] = (byte) 0xff;
+    assertRebuilt(index);
+  }
+}